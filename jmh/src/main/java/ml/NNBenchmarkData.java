@@ -0,0 +1,51 @@
+package ml;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+//shared fixtures of the benchmarks: random datasets and networks built from the parameters of the matrix
+final class NNBenchmarkData {
+    static final int INPUT_SIZE = 32;
+    static final int OUTPUT_SIZE = 4;
+    static final PrintStream NULL = new PrintStream(OutputStream.nullOutputStream());
+
+    private NNBenchmarkData() {}
+
+    //{data, objectives}, the same rows for a given seed
+    static double[][][] dataset(int rows, long seed) {
+        Random r = new Random(seed);
+        double[][] x = new double[rows][INPUT_SIZE];
+        double[][] y = new double[rows][OUTPUT_SIZE];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < INPUT_SIZE; j++) {
+                x[i][j] = r.nextDouble() * 100;
+            }
+
+            for (int j = 0; j < OUTPUT_SIZE; j++) {
+                y[i][j] = r.nextDouble();
+            }
+        }
+
+        return new double[][][] {x, y};
+    }
+
+    //hidden layers written as "64x64", the output layer is linear
+    static NeuralNetwork network(double[][][] set, String hidden, NNActivation activation, int epochs, int batchSize, int threads, NNTrainingMode mode) {
+        String[] sizes = hidden.split("x");
+        int[] layers = new int[sizes.length + 1];
+        NNActivation[] activations = new NNActivation[layers.length];
+
+        for (int i = 0; i < sizes.length; i++) {
+            layers[i] = Integer.parseInt(sizes[i]);
+            activations[i] = activation;
+        }
+
+        layers[sizes.length] = OUTPUT_SIZE;
+        activations[sizes.length] = NNActivation.LINEAR;
+
+        NNParameters p = new NNParameters(INPUT_SIZE, layers, epochs, 0.001, false, activations, NNError.MSE).setBatchSize(batchSize).setThreads(threads).setTrainingMode(mode).setNormalization(NNNormalization.Z_SCORE);
+        return new NeuralNetwork(new NNArrayDataset(set[0], set[1]), p);
+    }
+}
@@ -0,0 +1,52 @@
+package ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//latency of a single prediction of an untrained network, the rows are taken in turn so that no input stays in cache
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NNGetAnswerBenchmark {
+    @Param({"16", "64x64", "256x256"})
+    public String hidden;
+
+    @Param({"SIGMOID", "TANH", "RELU", "LINEAR"})
+    public NNActivation activation;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    private NeuralNetwork network;
+    private double[][] x;
+    private int next;
+
+    @Setup
+    public void setup() {
+        double[][][] set = NNBenchmarkData.dataset(this.rows, 42);
+        this.network = NNBenchmarkData.network(set, this.hidden, this.activation, 1, 1, 1, NNTrainingMode.SYNCHRONOUS);
+        this.x = set[0];
+        this.next = 0;
+    }
+
+    @Benchmark
+    public double[] getAnswer() {
+        double[] input = this.x[this.next];
+        this.next = this.next + 1 == this.x.length ? 0 : this.next + 1;
+        return this.network.getAnswer(input);
+    }
+}
@@ -0,0 +1,67 @@
+package ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+//parsing of a whole csv file of random rows by SupervisedNetwork.loadCSV
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NNLoadCSVBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        double[][][] set = NNBenchmarkData.dataset(this.rows, 42);
+        this.file = File.createTempFile("benchmark", ".csv");
+
+        try (PrintWriter pw = new PrintWriter(new FileOutputStream(this.file))) {
+            for (int i = 0; i < this.rows; i++) {
+                StringBuilder sb = new StringBuilder();
+
+                for (double d: set[0][i]) {
+                    sb.append(d).append(',');
+                }
+
+                for (int j = 0; j < set[1][i].length; j++) {
+                    sb.append(set[1][i][j]).append(j == set[1][i].length - 1 ? "" : ",");
+                }
+
+                pw.println(sb);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        this.file.delete();
+    }
+
+    @Benchmark
+    public double[][][] loadCSV() {
+        return SupervisedNetwork.loadCSV(this.file.getPath(), NNBenchmarkData.OUTPUT_SIZE);
+    }
+}
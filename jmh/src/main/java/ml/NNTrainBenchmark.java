@@ -0,0 +1,87 @@
+package ml;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+//a whole train() of EPOCHS epochs, thread start-up and the final loss pass included, every invocation trains a new network
+//the score is in trainings per second, the samples counter gives the samples per second, rows * EPOCHS per training
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NNTrainBenchmark {
+    private static final int EPOCHS = 2;
+
+    @Param({"16", "64x64", "256x256"})
+    public String hidden;
+
+    @Param({"SIGMOID", "TANH", "RELU", "LINEAR"})
+    public NNActivation activation;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"1", "2", "4", "8", "0"}) //0 for one thread per processor
+    public int threads;
+
+    @Param({"SYNCHRONOUS", "HOGWILD"})
+    public NNTrainingMode mode;
+
+    private double[][][] set;
+    private NeuralNetwork network;
+    private PrintStream out;
+
+    //samples trained, reported per second next to the score
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Samples {
+        public long samples;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.samples = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void dataset() {
+        this.set = NNBenchmarkData.dataset(this.rows, 42);
+        this.out = System.out;
+        System.setOut(NNBenchmarkData.NULL); //train() reports its progress
+    }
+
+    @Setup(Level.Invocation)
+    public void network() {
+        int threads = this.threads == 0 ? Runtime.getRuntime().availableProcessors() : this.threads;
+        this.network = NNBenchmarkData.network(this.set, this.hidden, this.activation, EPOCHS, 32, threads, this.mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(this.out);
+    }
+
+    @Benchmark
+    public NeuralNetwork train(Samples samples) {
+        this.network.train();
+        samples.samples += (long) this.rows * EPOCHS;
+        return this.network;
+    }
+}
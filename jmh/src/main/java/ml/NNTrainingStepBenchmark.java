@@ -0,0 +1,59 @@
+package ml;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+//one mini-batch of NNEpochsPerformer: loading, forward and backward pass and the optimizer update, without threads, barriers or evaluations
+//every iteration starts from a freshly initialized network
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NNTrainingStepBenchmark {
+    @Param({"16", "64x64", "256x256"})
+    public String hidden;
+
+    @Param({"SIGMOID", "TANH", "RELU", "LINEAR"})
+    public NNActivation activation;
+
+    @Param({"1000", "10000"})
+    public int rows;
+
+    @Param({"1", "32"})
+    public int batchSize;
+
+    private double[][][] set;
+    private NeuralNetwork.NNEpochsPerformer performer;
+    private int step;
+
+    @Setup(Level.Trial)
+    public void dataset() {
+        this.set = NNBenchmarkData.dataset(this.rows, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void network() {
+        this.performer = NNBenchmarkData.network(this.set, this.hidden, this.activation, 1, this.batchSize, 1, NNTrainingMode.SYNCHRONOUS).performer();
+        this.step = 0;
+    }
+
+    @Benchmark
+    public void trainingStep() throws InterruptedException {
+        this.performer.step(this.step);
+        this.step = this.step + 1 == this.performer.getSteps() ? 0 : this.step + 1;
+    }
+}
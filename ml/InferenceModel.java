@@ -0,0 +1,315 @@
+package ml;
+
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+//read-only network used for predictions, every calling thread gets its own scratch buffers so no locking is needed
+public final class InferenceModel {
+    private static final int PREDICTION_BLOCK = 64; //rows per forward pass when predicting
+    private static final int PARALLEL_PREDICTION_ROWS = 4096; //batches from this size on are predicted in parallel
+
+    private final NNWeights weights;
+    private final NNPlan plan;
+    private final NNPrecision precision;
+    private final NNNormalizer normalizer; //fitted on the training set, applied to every input row
+    private final float[] weightsT; //single precision copy of the weights, every layer transposed to fanIn x size
+    private final float[] biasF;
+    private final byte[] weightsQT; //int8 copy of the weights, transposed like weightsT
+    private final float[] weightScale; //int8 scale of each neuron's weights
+    private final float[] inputScale; //int8 scale of each layer's input, calibrated on sample rows
+    private final ThreadLocal<NNWorkspace> workspace;
+
+    InferenceModel(NNWeights weights, NNActivation[] activations, NNNormalizer normalizer) {
+        this(weights, activations, normalizer, NNPrecision.DOUBLE);
+    }
+
+    InferenceModel(NNWeights weights, NNActivation[] activations, NNNormalizer normalizer, NNPrecision precision) {
+        this(weights, activations, normalizer, precision, null);
+    }
+
+    //int8 model, inputScale holds the largest absolute input of each layer seen during calibration divided by 127
+    //only the int8 weights, their scales and the float bias are kept, a quarter of the memory of the single precision model and an eighth of the double one
+    InferenceModel(NNWeights weights, NNActivation[] activations, NNNormalizer normalizer, float[] inputScale) {
+        this(weights, activations, normalizer, NNPrecision.INT8, inputScale);
+    }
+
+    private InferenceModel(NNWeights weights, NNActivation[] activations, NNNormalizer normalizer, NNPrecision precision, float[] inputScale) {
+        if ((precision == NNPrecision.INT8) != (inputScale != null)) {
+            throw new IllegalArgumentException("Int8 models need the scale of every layer's input");
+        }
+
+        NNWeights layout = precision == NNPrecision.DOUBLE ? weights : weights.topology(); //the other precisions only read their own copy of the parameters
+        this.weights = layout;
+        this.plan = new NNPlan(activations);
+        this.precision = precision;
+        this.normalizer = normalizer;
+        this.inputScale = inputScale;
+        this.workspace = ThreadLocal.withInitial(() -> new NNWorkspace(layout, PREDICTION_BLOCK, false, precision));
+
+        if (precision == NNPrecision.INT8) {
+            double[] w = weights.getWeights();
+            double[] b = weights.getBias();
+            this.weightsQT = new byte[w.length];
+            this.weightScale = new float[b.length];
+            this.biasF = new float[b.length];
+
+            for (int l = 0; l < weights.getLayers(); l++) {
+                int fanIn = weights.getFanIn(l);
+
+                for (int n = 0; n < weights.getLayerSize(l); n++) { //symmetric per neuron, so a single large weight does not cost the others their precision
+                    int offset = weights.getWeightOffset(l) + n * fanIn;
+                    double max = 0.00;
+
+                    for (int i = 0; i < fanIn; i++) {
+                        max = Math.max(max, Math.abs(w[offset + i]));
+                    }
+
+                    double scale = max / 127;
+                    this.weightScale[weights.getBiasOffset(l) + n] = (float) scale;
+
+                    for (int i = 0; i < fanIn; i++) {
+                        this.weightsQT[weights.getWeightOffset(l) + i * weights.getLayerSize(l) + n] = scale > 0 ? (byte) Math.round(w[offset + i] / scale) : 0;
+                    }
+                }
+            }
+
+            for (int i = 0; i < b.length; i++) {
+                this.biasF[i] = (float) b[i];
+            }
+
+            this.weightsT = null;
+            return;
+        }
+
+        this.weightsQT = null;
+        this.weightScale = null;
+
+        if (precision == NNPrecision.FLOAT) {
+            double[] w = weights.getWeights();
+            double[] b = weights.getBias();
+            this.weightsT = new float[w.length];
+            this.biasF = new float[b.length];
+
+            for (int l = 0; l < weights.getLayers(); l++) {
+                int offset = weights.getWeightOffset(l);
+                int size = weights.getLayerSize(l);
+                int fanIn = weights.getFanIn(l);
+
+                for (int n = 0; n < size; n++) {
+                    for (int i = 0; i < fanIn; i++) {
+                        this.weightsT[offset + i * size + n] = (float) w[offset + n * fanIn + i];
+                    }
+                }
+            }
+
+            for (int i = 0; i < b.length; i++) {
+                this.biasF[i] = (float) b[i];
+            }
+        } else {
+            this.weightsT = null;
+            this.biasF = null;
+        }
+    }
+
+    //maps a file written by NeuralNetwork.save()
+    public static InferenceModel load(String filename) throws IOException {
+        return NeuralNetwork.load(filename).model; //nothing else references the loaded weights
+    }
+
+    public int getInputSize() {
+        return this.weights.getInputSize();
+    }
+
+    public int getOutputSize() {
+        return this.weights.getOutputSize();
+    }
+
+    public NNPrecision getPrecision() {
+        return this.precision;
+    }
+
+    public NNNormalizer getNormalizer() {
+        return this.normalizer;
+    }
+
+    //changes whenever the weights the model reads from do, frozen and loaded models never change
+    long getVersion() {
+        return this.weights.getVersion();
+    }
+
+    public double[] getAnswer(double[] input) {
+        double[] y = new double[this.weights.getOutputSize()];
+        this.predict(input, y);
+        return y;
+    }
+
+    //one row given by its non zero inputs, double precision models with a scale only normalizer multiply nothing else
+    public double[] getAnswer(int[] indices, double[] values) {
+        int inputSize = this.weights.getInputSize();
+
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Indices and values must have the same length");
+        }
+
+        for (int index: indices) {
+            if (index < 0 || index >= inputSize) {
+                throw new IllegalArgumentException("Input index " + index + " out of bounds for " + inputSize + " inputs");
+            }
+        }
+
+        if (this.precision != NNPrecision.DOUBLE || !this.normalizer.isUncentered()) {
+            double[] x = new double[inputSize];
+
+            for (int p = 0; p < indices.length; p++) {
+                x[indices[p]] += values[p];
+            }
+
+            return this.getAnswer(x);
+        }
+
+        NNWorkspace ws = this.workspace.get();
+        ws.ensureSparse(indices.length);
+        ws.sparseRows[0] = 0;
+        ws.sparseRows[1] = indices.length;
+
+        for (int p = 0; p < indices.length; p++) {
+            ws.sparseColumns[p] = indices[p];
+            ws.sparseValues[p] = this.normalizer.apply(indices[p], values[p]);
+        }
+
+        NNKernels.forwardSparse(this.weights, this.plan, ws, 1);
+        double[] y = new double[this.weights.getOutputSize()];
+        System.arraycopy(ws.values[this.weights.getLayers() - 1], 0, y, 0, y.length);
+        return y;
+    }
+
+    //predicts a batch of rows into out without allocating, large batches are split across the common pool
+    public void predict(double[][] inputs, double[][] out) {
+        if (inputs.length != out.length) {
+            throw new IllegalArgumentException("Inputs and outputs must have the same number of rows");
+        }
+
+        if (inputs.length >= PARALLEL_PREDICTION_ROWS) {
+            IntStream.range(0, (inputs.length + PREDICTION_BLOCK - 1) / PREDICTION_BLOCK).parallel().forEach(block -> this.predictBlock(inputs, out, block * PREDICTION_BLOCK));
+        } else {
+            for (int first = 0; first < inputs.length; first += PREDICTION_BLOCK) {
+                this.predictBlock(inputs, out, first);
+            }
+        }
+    }
+
+    //same as predict(double[][], double[][]) over row-major buffers
+    public void predict(double[] inputs, double[] out) {
+        int inputSize = this.weights.getInputSize();
+        int outputSize = this.weights.getOutputSize();
+        int rows = inputs.length / inputSize;
+
+        if (inputs.length % inputSize != 0 || out.length != rows * outputSize) {
+            throw new IllegalArgumentException("Prediction data length mismatch");
+        }
+
+        if (rows >= PARALLEL_PREDICTION_ROWS) {
+            IntStream.range(0, (rows + PREDICTION_BLOCK - 1) / PREDICTION_BLOCK).parallel().forEach(block -> this.predictBlock(inputs, out, block * PREDICTION_BLOCK, rows));
+        } else {
+            for (int first = 0; first < rows; first += PREDICTION_BLOCK) {
+                this.predictBlock(inputs, out, first, rows);
+            }
+        }
+    }
+
+    private void predictBlock(double[][] inputs, double[][] out, int first) {
+        NNWorkspace ws = this.workspace.get();
+        int inputSize = this.weights.getInputSize();
+        int outputSize = this.weights.getOutputSize();
+        int rows = Math.min(PREDICTION_BLOCK, inputs.length - first);
+
+        for (int r = 0; r < rows; r++) {
+            if (inputs[first + r].length != inputSize || out[first + r].length != outputSize) {
+                throw new IllegalArgumentException("Prediction data length mismatch at row " + (first + r));
+            }
+
+            if (this.precision == NNPrecision.FLOAT) {
+                for (int i = 0; i < inputSize; i++) {
+                    ws.inputF[r][i] = (float) this.normalizer.apply(i, inputs[first + r][i]);
+                }
+            } else if (this.precision == NNPrecision.INT8) {
+                for (int i = 0; i < inputSize; i++) {
+                    ws.inputQ[r * inputSize + i] = (float) this.normalizer.apply(i, inputs[first + r][i]);
+                }
+            } else {
+                System.arraycopy(inputs[first + r], 0, ws.input, r * inputSize, inputSize);
+                this.normalizer.apply(ws.input, r * inputSize, 1);
+            }
+        }
+
+        if (this.precision == NNPrecision.FLOAT) {
+            NNKernels.forward(this.weights, this.weightsT, this.biasF, this.plan, ws, rows);
+            float[][] y = ws.valuesF[this.weights.getLayers() - 1];
+
+            for (int r = 0; r < rows; r++) {
+                for (int i = 0; i < outputSize; i++) {
+                    out[first + r][i] = y[r][i];
+                }
+            }
+        } else if (this.precision == NNPrecision.INT8) {
+            NNKernels.forward(this.weights, this.weightsQT, this.weightScale, this.inputScale, this.biasF, this.plan, ws, rows);
+            float[] y = ws.valuesQ[this.weights.getLayers() - 1];
+
+            for (int r = 0; r < rows; r++) {
+                for (int i = 0; i < outputSize; i++) {
+                    out[first + r][i] = y[r * outputSize + i];
+                }
+            }
+        } else {
+            NNKernels.forward(this.weights, this.plan, ws, ws.input, 0, rows);
+            double[] y = ws.values[this.weights.getLayers() - 1];
+
+            for (int r = 0; r < rows; r++) {
+                System.arraycopy(y, r * outputSize, out[first + r], 0, outputSize);
+            }
+        }
+    }
+
+    private void predictBlock(double[] inputs, double[] out, int first, int totalRows) {
+        NNWorkspace ws = this.workspace.get();
+        int inputSize = this.weights.getInputSize();
+        int outputSize = this.weights.getOutputSize();
+        int rows = Math.min(PREDICTION_BLOCK, totalRows - first);
+
+        if (this.precision == NNPrecision.FLOAT) {
+            for (int r = 0; r < rows; r++) {
+                for (int i = 0; i < inputSize; i++) {
+                    ws.inputF[r][i] = (float) this.normalizer.apply(i, inputs[(first + r) * inputSize + i]);
+                }
+            }
+
+            NNKernels.forward(this.weights, this.weightsT, this.biasF, this.plan, ws, rows);
+            float[][] y = ws.valuesF[this.weights.getLayers() - 1];
+
+            for (int r = 0; r < rows; r++) {
+                for (int i = 0; i < outputSize; i++) {
+                    out[(first + r) * outputSize + i] = y[r][i];
+                }
+            }
+        } else if (this.precision == NNPrecision.INT8) {
+            for (int i = 0; i < rows * inputSize; i++) {
+                ws.inputQ[i] = (float) this.normalizer.apply(i % inputSize, inputs[first * inputSize + i]);
+            }
+
+            NNKernels.forward(this.weights, this.weightsQT, this.weightScale, this.inputScale, this.biasF, this.plan, ws, rows);
+            float[] y = ws.valuesQ[this.weights.getLayers() - 1];
+
+            for (int i = 0; i < rows * outputSize; i++) {
+                out[first * outputSize + i] = y[i];
+            }
+        } else if (this.normalizer.getType() == NNNormalization.NONE) {
+            NNKernels.forward(this.weights, this.plan, ws, inputs, first * inputSize, rows);
+            System.arraycopy(ws.values[this.weights.getLayers() - 1], 0, out, first * outputSize, rows * outputSize);
+        } else { //the caller's buffer is not modified, rows are normalized into the workspace
+            System.arraycopy(inputs, first * inputSize, ws.input, 0, rows * inputSize);
+            this.normalizer.apply(ws.input, 0, rows);
+            NNKernels.forward(this.weights, this.plan, ws, ws.input, 0, rows);
+            System.arraycopy(ws.values[this.weights.getLayers() - 1], 0, out, first * outputSize, rows * outputSize);
+        }
+    }
+}
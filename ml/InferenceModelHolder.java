@@ -0,0 +1,41 @@
+package ml;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+//serving entry point whose model can be replaced atomically, every call runs entirely on the model that was current when it started
+public class InferenceModelHolder {
+    private final AtomicReference<InferenceModel> model;
+
+    public InferenceModelHolder(InferenceModel model) {
+        this.model = new AtomicReference<>(model);
+    }
+
+    public InferenceModel get() {
+        return this.model.get();
+    }
+
+    //returns the replaced model
+    public InferenceModel swap(InferenceModel model) {
+        if (model.getInputSize() != this.model.get().getInputSize() || model.getOutputSize() != this.model.get().getOutputSize()) {
+            throw new IllegalArgumentException("The new model must have the same input and output sizes");
+        }
+
+        return this.model.getAndSet(model);
+    }
+
+    public double[] getAnswer(double[] input) {
+        return this.model.get().getAnswer(input);
+    }
+
+    public double[] getAnswer(int[] indices, double[] values) {
+        return this.model.get().getAnswer(indices, values);
+    }
+
+    public void predict(double[][] inputs, double[][] out) {
+        this.model.get().predict(inputs, out);
+    }
+
+    public void predict(double[] inputs, double[] out) {
+        this.model.get().predict(inputs, out);
+    }
+}
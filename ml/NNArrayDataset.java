@@ -0,0 +1,36 @@
+package ml;
+
+public class NNArrayDataset implements NNDataset {
+    private final double[][] data;
+    private final double[][] objectives;
+
+    public NNArrayDataset(double[][] data, double[][] objectives) {
+        if (data.length != objectives.length || data.length == 0) {
+            throw new IllegalArgumentException("Data and objectives must have the same, non zero, number of rows");
+        }
+
+        this.data = data;
+        this.objectives = objectives;
+    }
+
+    @Override
+    public int size() {
+        return this.data.length;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.data[0].length;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.objectives[0].length;
+    }
+
+    @Override
+    public void read(int row, double[] x, int xOffset, double[] y, int yOffset) {
+        System.arraycopy(this.data[row], 0, x, xOffset, this.data[row].length);
+        System.arraycopy(this.objectives[row], 0, y, yOffset, this.objectives[row].length);
+    }
+}
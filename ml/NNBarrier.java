@@ -0,0 +1,67 @@
+package ml;
+
+import java.util.concurrent.BrokenBarrierException;
+
+//cyclic barrier which does not allocate when it trips, CyclicBarrier allocates a new generation every time
+//the last party to arrive runs the action while the others wait, an action that throws or a party interrupted while waiting breaks the barrier for good
+//what the action threw is kept for the thread that started the parties, every party including the one that ran it gets a BrokenBarrierException
+final class NNBarrier {
+    private final int parties;
+    private final Runnable action;
+    private int arrived;
+    private long generation; //trips so far
+    private boolean broken;
+    private Throwable failure;
+
+    NNBarrier(int parties, Runnable action) {
+        this.parties = parties;
+        this.action = action;
+    }
+
+    synchronized void await() throws InterruptedException, BrokenBarrierException {
+        if (this.broken) {
+            throw new BrokenBarrierException();
+        }
+
+        long generation = this.generation;
+
+        if (++this.arrived == this.parties) {
+            this.arrived = 0;
+
+            try {
+                this.action.run();
+            } catch (RuntimeException | Error e) {
+                this.failure = e;
+                this.breakBarrier();
+                throw (BrokenBarrierException) new BrokenBarrierException("The barrier action failed").initCause(e);
+            }
+
+            this.generation++;
+            this.notifyAll();
+            return;
+        }
+
+        while (this.generation == generation && !this.broken) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                this.breakBarrier();
+                throw e;
+            }
+        }
+
+        if (this.generation == generation) {
+            throw new BrokenBarrierException();
+        }
+    }
+
+    //null unless the action threw
+    synchronized Throwable getFailure() {
+        return this.failure;
+    }
+
+    private void breakBarrier() {
+        this.broken = true;
+        this.notifyAll();
+    }
+}
@@ -0,0 +1,232 @@
+package ml;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//row-major binary dataset read straight from memory-mapped pages
+//layout: header (magic, version, rows, input and output columns, dtype), per input column min, max, mean and variance, then the rows (inputs followed by objectives)
+public class NNBinaryDataset implements NNDataset {
+    public static final int FLOAT64 = 0;
+    public static final int FLOAT32 = 1;
+
+    private static final int MAGIC = 0x4E4E4453; //"NNDS"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 32;
+    private static final long REGION_SIZE = 1L << 30; //upper bound of the bytes addressed by each mapping
+
+    private final MappedByteBuffer[] regions;
+    private final int rows;
+    private final int inputSize;
+    private final int outputSize;
+    private final int dtype;
+    private final int rowBytes;
+    private final int rowsPerRegion;
+    private final double[] min;
+    private final double[] max;
+    private final double[] mean;
+    private final double[] variance;
+
+    public NNBinaryDataset(String filename) throws IOException {
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            fc.read(header, 0);
+            header.flip();
+
+            if (header.remaining() < FIXED_HEADER_SIZE || header.getInt() != MAGIC) {
+                throw new IOException("Not a binary dataset: " + filename);
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary dataset version " + version);
+            }
+
+            long rows = header.getLong();
+            this.inputSize = header.getInt();
+            this.outputSize = header.getInt();
+            this.dtype = header.getInt();
+
+            if (rows > Integer.MAX_VALUE) {
+                throw new IOException("Too many rows: " + rows);
+            }
+
+            this.rows = (int) rows;
+            this.rowBytes = (this.inputSize + this.outputSize) * (this.dtype == FLOAT32 ? Float.BYTES : Double.BYTES);
+            this.rowsPerRegion = (int) Math.max(1, REGION_SIZE / this.rowBytes);
+
+            ByteBuffer stats = fc.map(FileChannel.MapMode.READ_ONLY, FIXED_HEADER_SIZE, statisticsSize(this.inputSize)).order(ByteOrder.LITTLE_ENDIAN);
+            this.min = new double[this.inputSize];
+            this.max = new double[this.inputSize];
+            this.mean = new double[this.inputSize];
+            this.variance = new double[this.inputSize];
+            stats.asDoubleBuffer().get(this.min).get(this.max).get(this.mean).get(this.variance);
+
+            long dataOffset = FIXED_HEADER_SIZE + statisticsSize(this.inputSize);
+
+            if (fc.size() < dataOffset + rows * this.rowBytes) {
+                throw new IOException("Truncated binary dataset: " + filename);
+            }
+
+            this.regions = new MappedByteBuffer[Math.max(1, (this.rows + this.rowsPerRegion - 1) / this.rowsPerRegion)];
+
+            for (int i = 0; i < this.regions.length; i++) {
+                long first = (long) i * this.rowsPerRegion;
+                long count = Math.min(this.rowsPerRegion, this.rows - first);
+                this.regions[i] = fc.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * this.rowBytes, count * this.rowBytes);
+                this.regions[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        }
+    }
+
+    //one-time conversion of a csv file, the statistics are gathered while writing
+    public static void fromCSV(String csvFile, int outputCols, String filename, int dtype) throws IOException {
+        write(new NNCSVDataset(csvFile, outputCols), filename, dtype);
+    }
+
+    public static void write(NNDataset set, String filename, int dtype) throws IOException {
+        if (dtype != FLOAT64 && dtype != FLOAT32) {
+            throw new IllegalArgumentException("Unknown dtype " + dtype);
+        }
+
+        int inputSize = set.getInputSize();
+        int outputSize = set.getOutputSize();
+        double[] x = new double[inputSize];
+        double[] y = new double[outputSize];
+        double[] min = new double[inputSize];
+        double[] max = new double[inputSize];
+        double[] mean = new double[inputSize];
+        double[] m2 = new double[inputSize];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(1 << 20, (inputSize + outputSize) * Double.BYTES + statisticsSize(inputSize) + FIXED_HEADER_SIZE)).order(ByteOrder.LITTLE_ENDIAN);
+            fc.position(FIXED_HEADER_SIZE + statisticsSize(inputSize));
+
+            for (int i = 0; i < set.size(); i++) {
+                set.read(i, x, 0, y, 0);
+
+                for (int j = 0; j < inputSize; j++) {
+                    double delta = x[j] - mean[j];
+                    mean[j] += delta / (i + 1);
+                    m2[j] += delta * (x[j] - mean[j]);
+                    min[j] = Math.min(min[j], x[j]);
+                    max[j] = Math.max(max[j], x[j]);
+                }
+
+                if (buffer.remaining() < (inputSize + outputSize) * Double.BYTES) {
+                    flush(fc, buffer);
+                }
+
+                put(buffer, x, dtype);
+                put(buffer, y, dtype);
+            }
+
+            flush(fc, buffer);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(set.size()).putInt(inputSize).putInt(outputSize).putInt(dtype).putInt(0);
+
+            for (double[] column: new double[][] {min, max, mean, m2}) {
+                for (int j = 0; j < inputSize; j++) {
+                    buffer.putDouble(column == m2 ? m2[j] / set.size() : column[j]);
+                }
+            }
+
+            buffer.flip();
+
+            for (long position = 0; buffer.hasRemaining(); ) {
+                position += fc.write(buffer, position);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.rows;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    @Override
+    public void read(int row, double[] x, int xOffset, double[] y, int yOffset) {
+        MappedByteBuffer b = this.regions[row / this.rowsPerRegion];
+        int p = (row % this.rowsPerRegion) * this.rowBytes;
+
+        if (this.dtype == FLOAT32) {
+            for (int i = 0; i < this.inputSize; i++, p += Float.BYTES) {
+                x[xOffset + i] = b.getFloat(p);
+            }
+
+            for (int i = 0; i < this.outputSize; i++, p += Float.BYTES) {
+                y[yOffset + i] = b.getFloat(p);
+            }
+        } else {
+            for (int i = 0; i < this.inputSize; i++, p += Double.BYTES) {
+                x[xOffset + i] = b.getDouble(p);
+            }
+
+            for (int i = 0; i < this.outputSize; i++, p += Double.BYTES) {
+                y[yOffset + i] = b.getDouble(p);
+            }
+        }
+    }
+
+    public int getDtype() {
+        return this.dtype;
+    }
+
+    public double[] getMin() {
+        return this.min.clone();
+    }
+
+    public double[] getMax() {
+        return this.max.clone();
+    }
+
+    public double[] getMean() {
+        return this.mean.clone();
+    }
+
+    public double[] getVariance() {
+        return this.variance.clone();
+    }
+
+    private static int statisticsSize(int inputSize) {
+        return 4 * inputSize * Double.BYTES;
+    }
+
+    private static void put(ByteBuffer buffer, double[] values, int dtype) {
+        for (double v: values) {
+            if (dtype == FLOAT32) {
+                buffer.putFloat((float) v);
+            } else {
+                buffer.putDouble(v);
+            }
+        }
+    }
+
+    private static void flush(FileChannel fc, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            fc.write(buffer);
+        }
+
+        buffer.clear();
+    }
+}
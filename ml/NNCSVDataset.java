@@ -0,0 +1,252 @@
+package ml;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+//memory-mapped csv file, only the row offsets live on the heap and rows are parsed on demand
+public class NNCSVDataset implements NNDataset {
+    static final long REGION_SIZE = 1L << 30; //bytes addressed by each mapping
+    static final int MAX_ROW_LENGTH = 1 << 20; //mappings overlap by this much so that every row lies within one mapping
+    private static final int INDEX_CHUNK = 1 << 22; //bytes indexed by each parallel task
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final MappedByteBuffer[] regions;
+    private final long[] rowOffsets;
+    private final byte separator;
+    private final int inputSize;
+    private final int outputSize;
+
+    public NNCSVDataset(String filename, int outputCols) throws IOException {
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            long size = fc.size();
+            this.regions = new MappedByteBuffer[(int) Math.max(1, (size + REGION_SIZE - 1) / REGION_SIZE)];
+
+            for (int i = 0; i < this.regions.length; i++) {
+                long position = i * REGION_SIZE;
+                this.regions[i] = fc.map(FileChannel.MapMode.READ_ONLY, position, Math.min(REGION_SIZE + MAX_ROW_LENGTH, size - position));
+            }
+
+            int chunks = (int) Math.max(1, (size + INDEX_CHUNK - 1) / INDEX_CHUNK);
+            long[][] offsets = IntStream.range(0, chunks).parallel().mapToObj(c -> this.indexRows(c * (long) INDEX_CHUNK, Math.min((c + 1) * (long) INDEX_CHUNK, size))).toArray(long[][]::new);
+            this.rowOffsets = Arrays.stream(offsets).flatMapToLong(Arrays::stream).toArray();
+        }
+
+        if (this.rowOffsets.length == 0) {
+            throw new IOException("Empty dataset: " + filename);
+        }
+
+        MappedByteBuffer first = this.region(this.rowOffsets[0]);
+        int start = this.position(this.rowOffsets[0]);
+        int columns = 1;
+        byte separator = ',';
+
+        for (int i = start; i < first.limit() && first.get(i) != '\n'; i++) {
+            if (first.get(i) == ';' || first.get(i) == ',') {
+                separator = first.get(i);
+                columns++;
+            }
+        }
+
+        if (columns <= outputCols) {
+            throw new IOException("The dataset has " + columns + " columns, " + outputCols + " output columns requested");
+        }
+
+        this.separator = separator;
+        this.inputSize = columns - outputCols;
+        this.outputSize = outputCols;
+    }
+
+    @Override
+    public int size() {
+        return this.rowOffsets.length;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    @Override
+    public void read(int row, double[] x, int xOffset, double[] y, int yOffset) {
+        parseRow(this.region(this.rowOffsets[row]), this.position(this.rowOffsets[row]), this.separator, this.inputSize, this.outputSize, x, xOffset, y, yOffset, row);
+    }
+
+    //parses the row starting at p and returns the position following it, row only appears in error messages
+    static int parseRow(MappedByteBuffer b, int p, byte separator, int inputSize, int outputSize, double[] x, int xOffset, double[] y, int yOffset, long row) {
+        int end = p;
+
+        for (int c = 0; c < inputSize + outputSize; c++) {
+            end = p;
+
+            while (end < b.limit() && b.get(end) != separator && b.get(end) != '\n') {
+                end++;
+            }
+
+            if (c < inputSize + outputSize - 1 && (end == b.limit() || b.get(end) == '\n')) {
+                throw new NumberFormatException("Row " + row + " has only " + (c + 1) + " columns");
+            }
+
+            double v = parseDouble(b, p, end);
+
+            if (c < inputSize) {
+                x[xOffset + c] = v;
+            } else {
+                y[yOffset + c - inputSize] = v;
+            }
+
+            p = end + 1;
+        }
+
+        while (end < b.limit() && b.get(end) != '\n') { //extra columns are ignored
+            end++;
+        }
+
+        return Math.min(end + 1, b.limit());
+    }
+
+    //parses every row in parallel into {data, objectives}
+    public double[][][] toArrays() {
+        double[][] x = new double[this.size()][];
+        double[][] y = new double[this.size()][];
+
+        IntStream.range(0, this.size()).parallel().forEach(i -> {
+            x[i] = new double[this.inputSize];
+            y[i] = new double[this.outputSize];
+            this.read(i, x[i], 0, y[i], 0);
+        });
+
+        return new double[][][] {x, y};
+    }
+
+    //offsets of the non blank rows starting in [from, to), chunks never cross a mapping boundary
+    private long[] indexRows(long from, long to) {
+        MappedByteBuffer b = this.region(from);
+        long base = from - this.position(from);
+        long[] offsets = new long[64];
+        int n = 0;
+
+        for (int p = this.position(from); p < to - base; p++) {
+            //the byte before the first one of a mapping lies in the overlap of the previous mapping
+            byte previous = p > 0 ? b.get(p - 1) : base == 0 ? (byte) '\n' : this.region(base - 1).get(this.position(base - 1));
+
+            if (previous == '\n') {
+                byte c = b.get(p);
+
+                if (c != '\n' && c != '\r') {
+                    if (n == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, n * 2);
+                    }
+
+                    offsets[n++] = base + p;
+                }
+            }
+        }
+
+        return Arrays.copyOf(offsets, n);
+    }
+
+    private MappedByteBuffer region(long offset) {
+        return this.regions[(int) (offset / REGION_SIZE)];
+    }
+
+    private int position(long offset) {
+        return (int) (offset % REGION_SIZE);
+    }
+
+    //decimal parser for [start, end) which does not allocate, uncommon inputs fall back to Double.parseDouble
+    static double parseDouble(MappedByteBuffer b, int start, int end) {
+        while (start < end && (b.get(start) == ' ' || b.get(start) == '"')) {
+            start++;
+        }
+
+        while (end > start && (b.get(end - 1) == ' ' || b.get(end - 1) == '"' || b.get(end - 1) == '\r')) {
+            end--;
+        }
+
+        int p = start;
+        boolean negative = false;
+
+        if (p < end && (b.get(p) == '-' || b.get(p) == '+')) {
+            negative = b.get(p) == '-';
+            p++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+
+        for (; p < end && b.get(p) >= '0' && b.get(p) <= '9'; p++) {
+            anyDigit = true;
+
+            if (mantissa != 0 || b.get(p) != '0') {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (b.get(p) - '0');
+                    digits++;
+                } else {
+                    exponent++;
+                }
+            }
+        }
+
+        if (p < end && b.get(p) == '.') {
+            p++;
+
+            for (; p < end && b.get(p) >= '0' && b.get(p) <= '9'; p++) {
+                anyDigit = true;
+
+                if (mantissa != 0 || b.get(p) != '0') {
+                    if (digits < 18) {
+                        mantissa = mantissa * 10 + (b.get(p) - '0');
+                        digits++;
+                        exponent--;
+                    }
+                } else {
+                    exponent--;
+                }
+            }
+        }
+
+        if (anyDigit && p < end && (b.get(p) == 'e' || b.get(p) == 'E')) {
+            p++;
+            boolean negativeExponent = false;
+            int e = 0;
+
+            if (p < end && (b.get(p) == '-' || b.get(p) == '+')) {
+                negativeExponent = b.get(p) == '-';
+                p++;
+            }
+
+            if (p == end) {
+                anyDigit = false;
+            }
+
+            for (; p < end && b.get(p) >= '0' && b.get(p) <= '9'; p++) {
+                e = Math.min(e * 10 + (b.get(p) - '0'), 100000);
+            }
+
+            exponent += negativeExponent ? -e : e;
+        }
+
+        //exact when both the mantissa and the power of ten are exactly representable
+        if (anyDigit && p == end && mantissa < (1L << 53) && Math.abs(exponent) < POW10.length) {
+            double v = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+            return negative ? -v : v;
+        }
+
+        byte[] bytes = new byte[end - start];
+        b.get(start, bytes);
+        return Double.parseDouble(new String(bytes, StandardCharsets.US_ASCII));
+    }
+}
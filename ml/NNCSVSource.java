@@ -0,0 +1,109 @@
+package ml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//csv file parsed while it is streamed through a sliding memory-mapped window, nothing is indexed so the number of rows is unbounded
+public class NNCSVSource implements NNDataSource, Closeable {
+    private static final int WINDOW_SIZE = 1 << 26; //rows starting in the first WINDOW_SIZE bytes of the mapping are parsed before sliding it
+
+    private final FileChannel channel;
+    private final long size;
+    private final byte separator;
+    private final int inputSize;
+    private final int outputSize;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int position; //next byte to parse, relative to windowStart
+    private long row;
+
+    public NNCSVSource(String filename, int outputCols) throws IOException {
+        this.channel = FileChannel.open(Path.of(filename), StandardOpenOption.READ);
+        this.size = this.channel.size();
+
+        try {
+            this.map(0);
+            this.skipBlankLines();
+
+            if (this.position == this.window.limit()) {
+                throw new IOException("Empty dataset: " + filename);
+            }
+
+            int columns = 1;
+            byte separator = ',';
+
+            for (int i = this.position; i < this.window.limit() && this.window.get(i) != '\n'; i++) {
+                if (this.window.get(i) == ';' || this.window.get(i) == ',') {
+                    separator = this.window.get(i);
+                    columns++;
+                }
+            }
+
+            if (columns <= outputCols) {
+                throw new IOException("The dataset has " + columns + " columns, " + outputCols + " output columns requested");
+            }
+
+            this.separator = separator;
+            this.inputSize = columns - outputCols;
+            this.outputSize = outputCols;
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    @Override
+    public void reset() throws IOException {
+        this.map(0);
+        this.row = 0;
+    }
+
+    @Override
+    public boolean next(double[] x, int xOffset, double[] y, int yOffset) throws IOException {
+        this.skipBlankLines();
+
+        if (this.position >= WINDOW_SIZE) {
+            this.map(this.windowStart + this.position);
+            this.skipBlankLines();
+        }
+
+        if (this.position == this.window.limit()) {
+            return false;
+        }
+
+        this.position = NNCSVDataset.parseRow(this.window, this.position, this.separator, this.inputSize, this.outputSize, x, xOffset, y, yOffset, this.row++);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    //the mapping extends past WINDOW_SIZE by the longest allowed row, so every row starting inside the window lies within it
+    private void map(long start) throws IOException {
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min((long) WINDOW_SIZE + NNCSVDataset.MAX_ROW_LENGTH, this.size - start));
+        this.windowStart = start;
+        this.position = 0;
+    }
+
+    private void skipBlankLines() {
+        while (this.position < this.window.limit() && (this.window.get(this.position) == '\n' || this.window.get(this.position) == '\r')) {
+            this.position++;
+        }
+    }
+}
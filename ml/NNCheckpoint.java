@@ -0,0 +1,166 @@
+package ml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+//copy of the whole training state at the end of an epoch, taken by the training threads and written by a background one
+//layout: header (magic, version), topology, epoch, learning rates, early stopping and optimizer counters, rng state, then weights, moments and best weights
+final class NNCheckpoint {
+    private static final int MAGIC = 0x4E4E434B; //"NNCK"
+    private static final int VERSION = 1;
+
+    final int epoch;
+    final double alpha;
+    final double rate;
+    final double bestLoss;
+    final int sinceBest;
+    final int sinceDecay;
+    final long steps;
+    final byte[] random; //serialized java.util.Random
+    final NNWeights weights;
+    final NNWeights firstMoment; //null when the optimizer does not use it
+    final NNWeights secondMoment;
+    final NNWeights best; //null without early stopping
+
+    NNCheckpoint(int epoch, double alpha, double rate, double bestLoss, int sinceBest, int sinceDecay, long steps, byte[] random, NNWeights weights, NNWeights firstMoment, NNWeights secondMoment, NNWeights best) {
+        this.epoch = epoch;
+        this.alpha = alpha;
+        this.rate = rate;
+        this.bestLoss = bestLoss;
+        this.sinceBest = sinceBest;
+        this.sinceDecay = sinceDecay;
+        this.steps = steps;
+        this.random = random;
+        this.weights = weights;
+        this.firstMoment = firstMoment;
+        this.secondMoment = secondMoment;
+        this.best = best;
+    }
+
+    static byte[] serialize(Random random) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(random);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); //in memory, does not happen
+        }
+
+        return bytes.toByteArray();
+    }
+
+    Random random() throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(this.random))) {
+            return (Random) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Corrupted random state", e);
+        }
+    }
+
+    //the file is replaced atomically, a crash while writing leaves the previous checkpoint intact
+    void write(String filename) throws IOException {
+        int layers = this.weights.getLayers();
+        int headerSize = 4 * Integer.BYTES + layers * Integer.BYTES + Integer.BYTES + 3 * Double.BYTES + 2 * Integer.BYTES + Long.BYTES + Integer.BYTES + this.random.length + 3 * Integer.BYTES;
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(this.weights.getInputSize()).putInt(layers);
+
+        for (int l = 0; l < layers; l++) {
+            header.putInt(this.weights.getLayerSize(l));
+        }
+
+        header.putInt(this.epoch).putDouble(this.alpha).putDouble(this.rate).putDouble(this.bestLoss);
+        header.putInt(this.sinceBest).putInt(this.sinceDecay).putLong(this.steps);
+        header.putInt(this.random.length).put(this.random);
+        header.putInt(this.firstMoment == null ? 0 : 1).putInt(this.secondMoment == null ? 0 : 1).putInt(this.best == null ? 0 : 1);
+        header.flip();
+
+        NNWeights[] arrays = {this.weights, this.firstMoment, this.secondMoment, this.best};
+        long size = headerSize;
+
+        for (NNWeights w: arrays) {
+            if (w != null) {
+                size += (long) (w.getWeights().length + w.getBias().length) * Double.BYTES;
+            }
+        }
+
+        Path target = Path.of(filename);
+        Path tmp = Path.of(filename + ".tmp");
+
+        try (FileChannel fc = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN).put(header);
+
+            for (NNWeights w: arrays) {
+                if (w != null) {
+                    out.asDoubleBuffer().put(w.getWeights()).put(w.getBias());
+                    out.position(out.position() + (w.getWeights().length + w.getBias().length) * Double.BYTES);
+                }
+            }
+
+            out.force();
+        }
+
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static NNCheckpoint read(String filename) throws IOException {
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer in = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (in.remaining() < 4 * Integer.BYTES || in.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint file: " + filename);
+            }
+
+            int version = in.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version);
+            }
+
+            int inputSize = in.getInt();
+            int[] layerSize = new int[in.getInt()];
+
+            for (int l = 0; l < layerSize.length; l++) {
+                layerSize[l] = in.getInt();
+            }
+
+            int epoch = in.getInt();
+            double alpha = in.getDouble();
+            double rate = in.getDouble();
+            double bestLoss = in.getDouble();
+            int sinceBest = in.getInt();
+            int sinceDecay = in.getInt();
+            long steps = in.getLong();
+            byte[] random = new byte[in.getInt()];
+            in.get(random);
+            boolean[] present = {true, in.getInt() == 1, in.getInt() == 1, in.getInt() == 1};
+            NNWeights[] arrays = new NNWeights[present.length];
+
+            for (int i = 0; i < arrays.length; i++) {
+                if (present[i]) {
+                    arrays[i] = new NNWeights(inputSize, layerSize);
+                    in.asDoubleBuffer().get(arrays[i].getWeights()).get(arrays[i].getBias());
+                    in.position(in.position() + (arrays[i].getWeights().length + arrays[i].getBias().length) * Double.BYTES);
+                }
+            }
+
+            return new NNCheckpoint(epoch, alpha, rate, bestLoss, sinceBest, sinceDecay, steps, random, arrays[0], arrays[1], arrays[2], arrays[3]);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            throw new IOException("Corrupted checkpoint file: " + filename, e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package ml;
+
+import java.net.InetSocketAddress;
+
+//processes training one network together, every process gets the same list of addresses and its own rank in it
+//each process listens on its own address and connects to the next one, forming a ring
+public class NNCluster {
+    private final int rank;
+    private final InetSocketAddress[] addresses;
+    private int connectTimeout = 60000; //milliseconds waited for the neighbours to come up
+
+    public NNCluster(int rank, String... addresses) {
+        if (addresses.length < 1 || rank < 0 || rank >= addresses.length) {
+            throw new IllegalArgumentException("The rank must index the list of addresses");
+        }
+
+        this.rank = rank;
+        this.addresses = new InetSocketAddress[addresses.length];
+
+        for (int i = 0; i < addresses.length; i++) {
+            int colon = addresses[i].lastIndexOf(':');
+
+            if (colon < 0) {
+                throw new IllegalArgumentException("Expected host:port, found " + addresses[i]);
+            }
+
+            this.addresses[i] = new InetSocketAddress(addresses[i].substring(0, colon), Integer.parseInt(addresses[i].substring(colon + 1)));
+        }
+    }
+
+    public NNCluster setConnectTimeout(int connectTimeout) {
+        if (connectTimeout < 0) {
+            throw new IllegalArgumentException("The timeout must be positive");
+        }
+
+        this.connectTimeout = connectTimeout;
+        return this;
+    }
+
+    public int getConnectTimeout() {
+        return this.connectTimeout;
+    }
+
+    public int getRank() {
+        return this.rank;
+    }
+
+    public int getSize() {
+        return this.addresses.length;
+    }
+
+    public InetSocketAddress getAddress(int rank) {
+        return this.addresses[rank];
+    }
+}
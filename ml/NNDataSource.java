@@ -0,0 +1,16 @@
+package ml;
+
+import java.io.IOException;
+
+//sequential source of training samples read once per epoch, for data that does not fit in memory or is generated on the fly
+public interface NNDataSource {
+    int getInputSize();
+
+    int getOutputSize();
+
+    //starts a new pass over the samples, called by one thread at the beginning of every epoch
+    void reset() throws IOException;
+
+    //copies the next sample to x from xOffset and y from yOffset, false once the pass is over
+    boolean next(double[] x, int xOffset, double[] y, int yOffset) throws IOException;
+}
@@ -0,0 +1,13 @@
+package ml;
+
+//random access source of training samples, implementations are free to keep the rows outside the heap
+public interface NNDataset {
+    int size();
+
+    int getInputSize();
+
+    int getOutputSize();
+
+    //copies the inputs of the row to x from xOffset and its objectives to y from yOffset, must be safe to call from several threads
+    void read(int row, double[] x, int xOffset, double[] y, int yOffset);
+}
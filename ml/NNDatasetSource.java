@@ -0,0 +1,36 @@
+package ml;
+
+//reads the rows of a dataset in order, sequential access lets the os read ahead memory-mapped files
+public class NNDatasetSource implements NNDataSource {
+    private final NNDataset set;
+    private int row;
+
+    public NNDatasetSource(NNDataset set) {
+        this.set = set;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.set.getInputSize();
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.set.getOutputSize();
+    }
+
+    @Override
+    public void reset() {
+        this.row = 0;
+    }
+
+    @Override
+    public boolean next(double[] x, int xOffset, double[] y, int yOffset) {
+        if (this.row == this.set.size()) {
+            return false;
+        }
+
+        this.set.read(this.row++, x, xOffset, y, yOffset);
+        return true;
+    }
+}
@@ -0,0 +1,37 @@
+package ml;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+@Name("ml.Epoch")
+@Label("Training Epoch")
+@Category("Neural Network")
+@Description("Metrics of one training epoch")
+final class NNEpochEvent extends jdk.jfr.Event {
+    @Label("Epoch")
+    int epoch;
+
+    @Label("Loss")
+    double loss;
+
+    @Label("Validation Loss")
+    double validationLoss;
+
+    @Label("Learning Rate")
+    double learningRate;
+
+    @Label("Samples per Second")
+    double samplesPerSecond;
+
+    @Label("Thread Utilization")
+    @Percentage
+    double threadUtilization;
+
+    @Label("Allocation Rate")
+    @DataAmount(DataAmount.BYTES)
+    double allocationRate;
+}
@@ -0,0 +1,79 @@
+package ml;
+
+public class NNEpochMetrics {
+    private final int epoch;
+    private final double loss;
+    private final double validationLoss;
+    private final double learningRate;
+    private final double samplesPerSecond;
+    private final long[] forwardNanos;
+    private final long[] backwardNanos;
+    private final double[] gradientNorms;
+    private final double threadUtilization;
+    private final double allocationRate;
+
+    NNEpochMetrics(int epoch, double loss, double validationLoss, double learningRate, double samplesPerSecond, long[] forwardNanos, long[] backwardNanos, double[] gradientNorms, double threadUtilization, double allocationRate) {
+        this.epoch = epoch;
+        this.loss = loss;
+        this.validationLoss = validationLoss;
+        this.learningRate = learningRate;
+        this.samplesPerSecond = samplesPerSecond;
+        this.forwardNanos = forwardNanos;
+        this.backwardNanos = backwardNanos;
+        this.gradientNorms = gradientNorms;
+        this.threadUtilization = threadUtilization;
+        this.allocationRate = allocationRate;
+    }
+
+    //counts from 1
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    //mean error per output over the batches of the epoch, measured before each update
+    public double getLoss() {
+        return this.loss;
+    }
+
+    //NaN when the network was not evaluated after this epoch
+    public double getValidationLoss() {
+        return this.validationLoss;
+    }
+
+    public double getLearningRate() {
+        return this.learningRate;
+    }
+
+    public double getSamplesPerSecond() {
+        return this.samplesPerSecond;
+    }
+
+    //time spent in the forward pass of each layer, summed over the workers
+    public long[] getForwardNanos() {
+        return this.forwardNanos.clone();
+    }
+
+    public long[] getBackwardNanos() {
+        return this.backwardNanos.clone();
+    }
+
+    //root mean square over the updates of the L2 norm of each layer's batch gradient
+    public double[] getGradientNorms() {
+        return this.gradientNorms.clone();
+    }
+
+    //fraction of the epoch the workers spent computing rather than waiting
+    public double getThreadUtilization() {
+        return this.threadUtilization;
+    }
+
+    //bytes per second allocated by the workers, NaN when the JVM does not measure it
+    public double getAllocationRate() {
+        return this.allocationRate;
+    }
+
+    @Override
+    public String toString() {
+        return "epoch " + this.epoch + ": loss " + this.loss + ", validation loss " + this.validationLoss + ", learning rate " + this.learningRate + ", " + (long) this.samplesPerSecond + " samples/sec, utilization " + this.threadUtilization + ", allocation " + (long) this.allocationRate + " B/sec";
+    }
+}
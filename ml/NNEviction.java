@@ -0,0 +1,6 @@
+package ml;
+
+public enum NNEviction {
+    LRU, //the least recently used entry makes room for every new one
+    TINY_LFU //a new entry only replaces the least recently used one when it was looked up more often, so bursts of one-off inputs cannot flush the hot ones
+}
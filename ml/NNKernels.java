@@ -0,0 +1,118 @@
+package ml;
+
+import java.util.Arrays;
+
+//stateless building blocks shared by training and inference
+final class NNKernels {
+    //whether the JVM was started with --add-modules jdk.incubator.vector, the kernels then run the loops of NNVector instead of their scalar ones
+    static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    private NNKernels() {}
+
+    static double activation(NNActivation activation, double x) {
+        return switch (activation) {
+            case SIGMOID -> 1.00 / (1.00 + Math.exp(-x));
+            case TANH -> Math.tanh(x);
+            case RELU -> x > 0 ? x : 0;
+            case LINEAR -> x;
+        };
+    }
+
+    static double activationDerivative(NNActivation f, double out, double net) {
+        return switch(f) {
+            case LINEAR -> 1;
+            case SIGMOID -> out * (1 - out);
+            case TANH -> 1 - out * out;
+            case RELU -> net > 0 ? 1 : 0;
+        };
+    }
+
+    //computes the activations of every layer for rows samples of x, stored row-major from xOffset
+    //each layer is one fused pass: the product starts from the bias and every finished tile is activated while it is still in cache
+    static void forward(NNWeights weights, NNPlan plan, NNWorkspace ws, double[] x, int xOffset, int rows) {
+        forward(weights, plan, ws, x, xOffset, rows, 0);
+    }
+
+    //same as above for the sparse rows of ws, only the non zero inputs are multiplied by the first layer
+    static void forwardSparse(NNWeights weights, NNPlan plan, NNWorkspace ws, int rows) {
+        long start = ws.forwardNanos == null ? 0 : System.nanoTime();
+        NNMatrix.multiplyTransposedB(ws.sparseRows, ws.sparseColumns, ws.sparseValues, weights.getWeights(), weights.getWeightOffset(0), weights.getBias(), weights.getBiasOffset(0), ws.values[0], 0, rows, weights.getLayerSize(0), weights.getFanIn(0), plan.layer(0));
+
+        if (ws.forwardNanos != null) {
+            ws.forwardNanos[0] += System.nanoTime() - start;
+        }
+
+        forward(weights, plan, ws, null, 0, rows, 1);
+    }
+
+    private static void forward(NNWeights weights, NNPlan plan, NNWorkspace ws, double[] x, int xOffset, int rows, int firstLayer) {
+        double[] w = weights.getWeights();
+        double[] b = weights.getBias();
+
+        for (int l = firstLayer; l < weights.getLayers(); l++) { //for each layer
+            long start = ws.forwardNanos == null ? 0 : System.nanoTime();
+            double[] input = l == 0 ? x : ws.values[l - 1];
+            int inputOffset = l == 0 ? xOffset : 0;
+            NNMatrix.multiplyTransposedB(input, inputOffset, w, weights.getWeightOffset(l), b, weights.getBiasOffset(l), ws.values[l], 0, rows, weights.getLayerSize(l), weights.getFanIn(l), plan.layer(l));
+
+            if (ws.forwardNanos != null) {
+                ws.forwardNanos[l] += System.nanoTime() - start;
+            }
+        }
+    }
+
+    //single precision forward pass of the rows in ws.inputF over weights stored transposed (fanIn x size per layer)
+    static void forward(NNWeights topology, float[] weightsT, float[] bias, NNPlan plan, NNWorkspace ws, int rows) {
+        for (int l = 0; l < topology.getLayers(); l++) { //for each layer
+            float[][] input = l == 0 ? ws.inputF : ws.valuesF[l - 1];
+            float[][] values = ws.valuesF[l];
+            int size = topology.getLayerSize(l);
+
+            for (int r = 0; r < rows; r++) {
+                System.arraycopy(bias, topology.getBiasOffset(l), values[r], 0, size);
+            }
+
+            NNMatrix.multiply(input, weightsT, topology.getWeightOffset(l), values, ws.rowF, rows, size, topology.getFanIn(l));
+
+            for (int r = 0; r < rows; r++) {
+                plan.layer(l).activate(values[r], size);
+            }
+        }
+    }
+
+    //int8 forward pass of the rows in ws.inputQ: the input of every layer is quantized with the scale calibrated for it, the dot products are exact int sums
+    //weights are transposed like the single precision ones (fanIn x size per layer) with one scale per neuron, so a neuron's net is its int sum times both scales plus the float bias
+    static void forward(NNWeights topology, byte[] weightsQT, float[] weightScale, float[] inputScale, float[] bias, NNPlan plan, NNWorkspace ws, int rows) {
+        for (int l = 0; l < topology.getLayers(); l++) { //for each layer
+            float[] input = l == 0 ? ws.inputQ : ws.valuesQ[l - 1];
+            float[] values = ws.valuesQ[l];
+            int size = topology.getLayerSize(l);
+            int fanIn = topology.getFanIn(l);
+            int bOffset = topology.getBiasOffset(l);
+            float scale = inputScale[l];
+            float inverse = scale > 0 ? 1 / scale : 0;
+
+            for (int r = 0; r < rows; r++) {
+                int[] q = ws.quantized[r];
+
+                for (int i = 0; i < fanIn; i++) {
+                    q[i] = Math.max(-127, Math.min(127, Math.round(input[r * fanIn + i] * inverse))); //values beyond the calibrated range saturate
+                }
+
+                Arrays.fill(ws.accumulator[r], 0, size, 0);
+            }
+
+            NNMatrix.multiply(ws.quantized, weightsQT, topology.getWeightOffset(l), ws.accumulator, ws.rowQ, rows, size, fanIn);
+
+            for (int r = 0; r < rows; r++) {
+                int[] sum = ws.accumulator[r];
+
+                for (int n = 0; n < size; n++) {
+                    values[r * size + n] = sum[n] * weightScale[bOffset + n] * scale + bias[bOffset + n];
+                }
+            }
+
+            plan.layer(l).activate(values, rows * size);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package ml;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("ml.Layer")
+@Label("Layer Epoch")
+@Category("Neural Network")
+@Description("Time and gradient norm of one layer over a training epoch")
+final class NNLayerEvent extends jdk.jfr.Event {
+    @Label("Epoch")
+    int epoch;
+
+    @Label("Layer")
+    int layer;
+
+    @Label("Forward Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long forwardTime;
+
+    @Label("Backward Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long backwardTime;
+
+    @Label("Gradient Norm")
+    double gradientNorm;
+}
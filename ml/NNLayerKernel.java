@@ -0,0 +1,112 @@
+package ml;
+
+//activation of a layer, one final subclass per function so that every loop below is compiled for a single activation and its call site sees a single class
+//derivatives are computed from the cached outputs, which is all that any of the activations needs
+abstract class NNLayerKernel {
+    private static final NNLayerKernel SIGMOID = new Sigmoid();
+    private static final NNLayerKernel TANH = new Tanh();
+    private static final NNLayerKernel RELU = new Relu();
+    private static final NNLayerKernel LINEAR = new Linear();
+
+    static NNLayerKernel of(NNActivation activation) {
+        return switch (activation) {
+            case SIGMOID -> SIGMOID;
+            case TANH -> TANH;
+            case RELU -> RELU;
+            case LINEAR -> LINEAR;
+        };
+    }
+
+    //in place over values[from, to)
+    abstract void activate(double[] values, int from, int to);
+
+    abstract void activate(float[] values, int n);
+
+    //deltas[i] *= f'(net[i]), expressed through values[i] = f(net[i])
+    abstract void multiplyDerivative(double[] values, double[] deltas, int n);
+
+    private static final class Sigmoid extends NNLayerKernel {
+        @Override
+        void activate(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = 1.00 / (1.00 + Math.exp(-values[i]));
+            }
+        }
+
+        @Override
+        void activate(float[] values, int n) {
+            for (int i = 0; i < n; i++) {
+                values[i] = (float) (1.00 / (1.00 + Math.exp(-values[i])));
+            }
+        }
+
+        @Override
+        void multiplyDerivative(double[] values, double[] deltas, int n) {
+            for (int i = 0; i < n; i++) {
+                deltas[i] *= values[i] * (1 - values[i]);
+            }
+        }
+    }
+
+    private static final class Tanh extends NNLayerKernel {
+        @Override
+        void activate(double[] values, int from, int to) {
+            for (int i = from; i < to; i++) {
+                values[i] = Math.tanh(values[i]);
+            }
+        }
+
+        @Override
+        void activate(float[] values, int n) {
+            for (int i = 0; i < n; i++) {
+                values[i] = (float) Math.tanh(values[i]);
+            }
+        }
+
+        @Override
+        void multiplyDerivative(double[] values, double[] deltas, int n) {
+            for (int i = 0; i < n; i++) {
+                deltas[i] *= 1 - values[i] * values[i];
+            }
+        }
+    }
+
+    private static final class Relu extends NNLayerKernel {
+        @Override
+        void activate(double[] values, int from, int to) {
+            if (NNKernels.VECTOR) {
+                NNVector.relu(values, from, to);
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                values[i] = values[i] > 0 ? values[i] : 0;
+            }
+        }
+
+        @Override
+        void activate(float[] values, int n) {
+            for (int i = 0; i < n; i++) {
+                values[i] = values[i] > 0 ? values[i] : 0;
+            }
+        }
+
+        @Override
+        void multiplyDerivative(double[] values, double[] deltas, int n) {
+            for (int i = 0; i < n; i++) {
+                deltas[i] = values[i] > 0 ? deltas[i] : 0;
+            }
+        }
+    }
+
+    private static final class Linear extends NNLayerKernel {
+        @Override
+        void activate(double[] values, int from, int to) {}
+
+        @Override
+        void activate(float[] values, int n) {}
+
+        @Override
+        void multiplyDerivative(double[] values, double[] deltas, int n) {}
+    }
+}
@@ -0,0 +1,215 @@
+package ml;
+
+//cache-blocked dense kernels over row-major matrices stored in flat arrays, every kernel accumulates into c
+final class NNMatrix {
+    private static final int TILE = 64;
+
+    private NNMatrix() {}
+
+    //c[m x n] = f(bias + a[m x k] * b[n x k]^T), the bias is broadcast over the rows of c
+    //the tiles of c are complete once the k loop is over and are activated right away, while they are still in cache
+    static void multiplyTransposedB(double[] a, int aOff, double[] b, int bOff, double[] bias, int biasOff, double[] c, int cOff, int m, int n, int k, NNLayerKernel f) {
+        for (int i0 = 0; i0 < m; i0 += TILE) {
+            int iMax = Math.min(i0 + TILE, m);
+
+            for (int j0 = 0; j0 < n; j0 += TILE) {
+                int jMax = Math.min(j0 + TILE, n);
+
+                for (int i = i0; i < iMax; i++) {
+                    System.arraycopy(bias, biasOff + j0, c, cOff + i * n + j0, jMax - j0);
+                }
+
+                for (int p0 = 0; p0 < k; p0 += TILE) {
+                    int pMax = Math.min(p0 + TILE, k);
+
+                    for (int i = i0; i < iMax; i++) {
+                        int aRow = aOff + i * k;
+                        int cRow = cOff + i * n;
+
+                        for (int j = j0; j < jMax; j++) {
+                            c[cRow + j] += dot(a, aRow, b, bOff + j * k, p0, pMax);
+                        }
+                    }
+                }
+
+                for (int i = i0; i < iMax; i++) {
+                    f.activate(c, cOff + i * n + j0, cOff + i * n + jMax);
+                }
+            }
+        }
+    }
+
+    //same as above with a in compressed sparse rows (rowPointer, columns, values), only its non zeros are multiplied
+    static void multiplyTransposedB(int[] rowPointer, int[] columns, double[] values, double[] b, int bOff, double[] bias, int biasOff, double[] c, int cOff, int m, int n, int k, NNLayerKernel f) {
+        for (int i = 0; i < m; i++) {
+            int cRow = cOff + i * n;
+            int from = rowPointer[i];
+            int to = rowPointer[i + 1];
+
+            for (int j = 0; j < n; j++) {
+                int bRow = bOff + j * k;
+                double s = bias[biasOff + j];
+
+                for (int p = from; p < to; p++) {
+                    s += values[p] * b[bRow + columns[p]];
+                }
+
+                c[cRow + j] = s;
+            }
+
+            f.activate(c, cRow, cRow + n);
+        }
+    }
+
+    //c[m x n] += a[k x m]^T * b[k x n] with b in compressed sparse rows, only the columns of c where b has non zeros are touched
+    static void multiplyTransposedA(double[] a, int aOff, int[] rowPointer, int[] columns, double[] values, double[] c, int cOff, int m, int n, int k) {
+        for (int i = 0; i < m; i++) { //a row of c at a time, so that the scattered updates stay within it
+            int cRow = cOff + i * n;
+
+            for (int p = 0; p < k; p++) {
+                double api = a[aOff + p * m + i];
+
+                if (api == 0) {
+                    continue;
+                }
+
+                for (int q = rowPointer[p]; q < rowPointer[p + 1]; q++) {
+                    c[cRow + columns[q]] += api * values[q];
+                }
+            }
+        }
+    }
+
+    //four independent partial sums break the dependency chain of the additions
+    private static double dot(double[] a, int aRow, double[] b, int bRow, int from, int to) {
+        if (NNKernels.VECTOR) {
+            return NNVector.dot(a, aRow + from, b, bRow + from, to - from);
+        }
+
+        double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int p = from;
+
+        for (; p + 3 < to; p += 4) {
+            s0 += a[aRow + p] * b[bRow + p];
+            s1 += a[aRow + p + 1] * b[bRow + p + 1];
+            s2 += a[aRow + p + 2] * b[bRow + p + 2];
+            s3 += a[aRow + p + 3] * b[bRow + p + 3];
+        }
+
+        for (; p < to; p++) {
+            s0 += a[aRow + p] * b[bRow + p];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    //y[yOff, yOff + n) += a * x[xOff, xOff + n)
+    private static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n) {
+        if (NNKernels.VECTOR) {
+            NNVector.axpy(a, x, xOff, y, yOff, n);
+            return;
+        }
+
+        for (int j = 0; j < n; j++) {
+            y[yOff + j] += a * x[xOff + j];
+        }
+    }
+
+    //c[m x n] += a[m x k] * b[k x n]
+    static void multiply(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int m, int n, int k) {
+        for (int i0 = 0; i0 < m; i0 += TILE) {
+            int iMax = Math.min(i0 + TILE, m);
+
+            for (int p0 = 0; p0 < k; p0 += TILE) {
+                int pMax = Math.min(p0 + TILE, k);
+
+                for (int j0 = 0; j0 < n; j0 += TILE) {
+                    int jMax = Math.min(j0 + TILE, n);
+
+                    for (int i = i0; i < iMax; i++) {
+                        int cRow = cOff + i * n;
+
+                        for (int p = p0; p < pMax; p++) {
+                            axpy(a[aOff + i * k + p], b, bOff + p * n + j0, c, cRow + j0, jMax - j0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //single precision c[m][n] += a[m][k] * b[k x n], b is flat from bOff
+    //every row of b is staged in row so that the innermost loop is a same-index axpy between two arrays, which the JIT compiles to SIMD instructions
+    static void multiply(float[][] a, float[] b, int bOff, float[][] c, float[] row, int m, int n, int k) {
+        for (int p = 0; p < k; p++) {
+            System.arraycopy(b, bOff + p * n, row, 0, n);
+
+            for (int i = 0; i < m; i++) {
+                float aip = a[i][p];
+
+                if (aip != 0) {
+                    axpy(aip, row, c[i], n);
+                }
+            }
+        }
+    }
+
+    private static void axpy(float a, float[] x, float[] y, int n) {
+        if (NNKernels.VECTOR) {
+            NNVector.axpy(a, x, y, n);
+            return;
+        }
+
+        for (int j = 0; j < n; j++) {
+            y[j] += a * x[j];
+        }
+    }
+
+    //int8 c[m][n] += a[m][k] * b[k x n], b is flat from bOff
+    //rows of b are widened into row because the JIT only vectorizes loops over a single element type, the sums are exact up to k = 2^31 / 127^2
+    static void multiply(int[][] a, byte[] b, int bOff, int[][] c, int[] row, int m, int n, int k) {
+        for (int p = 0; p < k; p++) {
+            for (int j = 0; j < n; j++) {
+                row[j] = b[bOff + p * n + j];
+            }
+
+            for (int i = 0; i < m; i++) {
+                int aip = a[i][p];
+
+                if (aip != 0) {
+                    axpy(aip, row, c[i], n);
+                }
+            }
+        }
+    }
+
+    private static void axpy(int a, int[] x, int[] y, int n) {
+        for (int j = 0; j < n; j++) {
+            y[j] += a * x[j];
+        }
+    }
+
+    //c[m x n] += a[k x m]^T * b[k x n]
+    static void multiplyTransposedA(double[] a, int aOff, double[] b, int bOff, double[] c, int cOff, int m, int n, int k) {
+        for (int p0 = 0; p0 < k; p0 += TILE) {
+            int pMax = Math.min(p0 + TILE, k);
+
+            for (int i0 = 0; i0 < m; i0 += TILE) {
+                int iMax = Math.min(i0 + TILE, m);
+
+                for (int j0 = 0; j0 < n; j0 += TILE) {
+                    int jMax = Math.min(j0 + TILE, n);
+
+                    for (int p = p0; p < pMax; p++) {
+                        int aRow = aOff + p * m;
+                        int bRow = bOff + p * n;
+
+                        for (int i = i0; i < iMax; i++) {
+                            axpy(a[aRow + i], b, bRow + j0, c, cOff + i * n + j0, jMax - j0);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
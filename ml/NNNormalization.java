@@ -0,0 +1,7 @@
+package ml;
+
+public enum NNNormalization {
+    NONE,
+    MIN_MAX,
+    Z_SCORE
+}
@@ -0,0 +1,115 @@
+package ml;
+
+import java.util.Arrays;
+
+//fitted per-feature transform x' = (x - shift) * scale, immutable so it can be shared by training and every inference model
+public final class NNNormalizer {
+    private final NNNormalization type;
+    private final double[] shift;
+    private final double[] scale;
+
+    NNNormalizer(NNNormalization type, double[] shift, double[] scale) {
+        this.type = type;
+        this.shift = shift;
+        this.scale = scale;
+    }
+
+    public static NNNormalizer identity(int features) {
+        double[] scale = new double[features];
+        Arrays.fill(scale, 1);
+        return new NNNormalizer(NNNormalization.NONE, new double[features], scale);
+    }
+
+    public static NNNormalizer fit(NNNormalization type, NNStatistics s) {
+        double[] min = s.getMin();
+        double[] max = s.getMax();
+        double[] mean = s.getMean();
+        double[] variance = s.getVariance();
+        double[] shift = new double[min.length];
+        double[] scale = new double[min.length];
+
+        for (int j = 0; j < min.length; j++) {
+            switch (type) {
+                case NONE -> scale[j] = 1;
+                case MIN_MAX -> {
+                    shift[j] = min[j];
+                    scale[j] = max[j] > min[j] ? 1 / (max[j] - min[j]) : 1; //constant features only get shifted
+                }
+                case Z_SCORE -> {
+                    shift[j] = mean[j];
+                    scale[j] = variance[j] > 0 ? 1 / Math.sqrt(variance[j]) : 1;
+                }
+            }
+        }
+
+        return new NNNormalizer(type, shift, scale);
+    }
+
+    //scaling only, so that zeros stay zeros and sparse inputs stay sparse: MIN_MAX divides by the largest absolute value, Z_SCORE by the standard deviation
+    public static NNNormalizer fitUncentered(NNNormalization type, NNStatistics s) {
+        double[] min = s.getMin();
+        double[] max = s.getMax();
+        double[] variance = s.getVariance();
+        double[] scale = new double[min.length];
+
+        for (int j = 0; j < min.length; j++) {
+            double range = Math.max(Math.abs(min[j]), Math.abs(max[j]));
+
+            scale[j] = switch (type) {
+                case NONE -> 1;
+                case MIN_MAX -> range > 0 ? 1 / range : 1;
+                case Z_SCORE -> variance[j] > 0 ? 1 / Math.sqrt(variance[j]) : 1;
+            };
+        }
+
+        return new NNNormalizer(type, new double[min.length], scale);
+    }
+
+    //true when zeros are mapped to zeros
+    public boolean isUncentered() {
+        for (double s: this.shift) {
+            if (s != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public NNNormalization getType() {
+        return this.type;
+    }
+
+    public int getFeatures() {
+        return this.shift.length;
+    }
+
+    public double[] getShift() {
+        return this.shift.clone();
+    }
+
+    public double[] getScale() {
+        return this.scale.clone();
+    }
+
+    public double apply(int feature, double x) {
+        return (x - this.shift[feature]) * this.scale[feature];
+    }
+
+    //normalizes rows consecutive samples of a row-major buffer in place
+    public void apply(double[] x, int offset, int rows) {
+        if (this.type == NNNormalization.NONE) {
+            return;
+        }
+
+        int features = this.shift.length;
+
+        for (int r = 0; r < rows; r++) {
+            int row = offset + r * features;
+
+            for (int j = 0; j < features; j++) {
+                x[row + j] = (x[row + j] - this.shift[j]) * this.scale[j];
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ml;
+
+public enum NNOptimizer {
+    SGD,
+    MOMENTUM,
+    RMSPROP,
+    ADAM
+}
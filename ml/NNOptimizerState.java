@@ -0,0 +1,119 @@
+package ml;
+
+//per-parameter state of the optimizer, kept in flat buffers parallel to the weights
+//every update is one fused pass over each array: the gradient is read once and the moments and the parameter are written in the same loop
+final class NNOptimizerState {
+    private final NNOptimizer optimizer;
+    private final double beta1; //momentum, or decay of the first moment
+    private final double beta2; //decay of the squared gradients
+    private final double epsilon;
+    private final NNWeights m; //velocity (momentum) or first moment (adam)
+    private final NNWeights v; //mean squared gradient (rmsprop) or second moment (adam)
+    private long steps;
+
+    NNOptimizerState(NNWeights weights, NNOptimizer optimizer, double beta1, double beta2, double epsilon) {
+        this.optimizer = optimizer;
+        this.beta1 = beta1;
+        this.beta2 = beta2;
+        this.epsilon = epsilon;
+        this.m = optimizer == NNOptimizer.SGD || optimizer == NNOptimizer.RMSPROP ? null : new NNWeights(weights.getInputSize(), weights.getLayerSizes());
+        this.v = optimizer == NNOptimizer.SGD || optimizer == NNOptimizer.MOMENTUM ? null : new NNWeights(weights.getInputSize(), weights.getLayerSizes());
+    }
+
+    NNOptimizer getOptimizer() {
+        return this.optimizer;
+    }
+
+    NNWeights getFirstMoment() {
+        return this.m;
+    }
+
+    NNWeights getSecondMoment() {
+        return this.v;
+    }
+
+    long getSteps() {
+        return this.steps;
+    }
+
+    void setSteps(long steps) {
+        this.steps = steps;
+    }
+
+    //gradient holds the gradients summed over rows samples
+    //hogwild workers call this concurrently, the state is then updated as racily as the weights
+    void update(NNWeights weights, NNWeights gradient, int rows, double alpha) {
+        double scale = 1.00 / rows;
+        long t = ++this.steps;
+
+        switch (this.optimizer) {
+            case SGD -> {
+                sgd(weights.getWeights(), gradient.getWeights(), alpha * scale);
+                sgd(weights.getBias(), gradient.getBias(), alpha * scale);
+            }
+            case MOMENTUM -> {
+                momentum(weights.getWeights(), gradient.getWeights(), this.m.getWeights(), alpha, scale, this.beta1);
+                momentum(weights.getBias(), gradient.getBias(), this.m.getBias(), alpha, scale, this.beta1);
+            }
+            case RMSPROP -> {
+                rmsProp(weights.getWeights(), gradient.getWeights(), this.v.getWeights(), alpha, scale, this.beta2, this.epsilon);
+                rmsProp(weights.getBias(), gradient.getBias(), this.v.getBias(), alpha, scale, this.beta2, this.epsilon);
+            }
+            case ADAM -> {
+                //the bias corrections are folded into the step size and epsilon
+                double c1 = 1 - Math.pow(this.beta1, t);
+                double c2 = Math.sqrt(1 - Math.pow(this.beta2, t));
+                double rate = alpha * c2 / c1;
+                double eps = this.epsilon * c2;
+                adam(weights.getWeights(), gradient.getWeights(), this.m.getWeights(), this.v.getWeights(), rate, scale, this.beta1, this.beta2, eps);
+                adam(weights.getBias(), gradient.getBias(), this.m.getBias(), this.v.getBias(), rate, scale, this.beta1, this.beta2, eps);
+            }
+        }
+
+        weights.markChanged();
+    }
+
+    private static void sgd(double[] w, double[] g, double rate) {
+        if (NNKernels.VECTOR) {
+            NNVector.axpy(-rate, g, 0, w, 0, w.length);
+            return;
+        }
+
+        for (int i = 0; i < w.length; i++) {
+            w[i] -= rate * g[i];
+        }
+    }
+
+    private static void momentum(double[] w, double[] g, double[] m, double alpha, double scale, double beta) {
+        for (int i = 0; i < w.length; i++) {
+            double mi = beta * m[i] + g[i] * scale;
+            m[i] = mi;
+            w[i] -= alpha * mi;
+        }
+    }
+
+    private static void rmsProp(double[] w, double[] g, double[] v, double alpha, double scale, double beta, double epsilon) {
+        for (int i = 0; i < w.length; i++) {
+            double gi = g[i] * scale;
+            double vi = beta * v[i] + (1 - beta) * gi * gi;
+            v[i] = vi;
+            w[i] -= alpha * gi / (Math.sqrt(vi) + epsilon);
+        }
+    }
+
+    private static void adam(double[] w, double[] g, double[] m, double[] v, double rate, double scale, double beta1, double beta2, double epsilon) {
+        if (NNKernels.VECTOR) {
+            NNVector.adam(w, g, m, v, rate, scale, beta1, beta2, epsilon);
+            return;
+        }
+
+        for (int i = 0; i < w.length; i++) {
+            double gi = g[i] * scale;
+            double mi = beta1 * m[i] + (1 - beta1) * gi;
+            double vi = beta2 * v[i] + (1 - beta2) * gi * gi;
+            m[i] = mi;
+            v[i] = vi;
+            w[i] -= rate * mi / (Math.sqrt(vi) + epsilon);
+        }
+    }
+}
@@ -8,6 +8,25 @@ public class NNParameters {
     private final boolean automaticRescaling;
     private final NNActivation[] activations;
     private final NNError error;
+    private int batchSize = 1;
+    private int threads = Runtime.getRuntime().availableProcessors(); //use all virtual processors available
+    private NNTrainingMode trainingMode = NNTrainingMode.SYNCHRONOUS;
+    private NNNormalization normalization = NNNormalization.MIN_MAX;
+    private NNOptimizer optimizer = NNOptimizer.SGD;
+    private double beta1 = 0.9; //momentum, or decay of the first moment
+    private double beta2 = 0.999; //decay of the squared gradients
+    private double epsilon = 1e-8;
+    private double validationSplit = 0; //fraction of the rows held out from the end of the training set
+    private int validationInterval = 1; //epochs between two evaluations of the validation loss
+    private int patience = 0; //evaluations without improvement before stopping, 0 never stops early
+    private NNSchedule schedule = NNSchedule.CONSTANT;
+    private int scheduleStep = 10; //epochs between two STEP decays, evaluations without improvement before a REDUCE_ON_PLATEAU decay
+    private double scheduleFactor = 0.1; //learning rate multiplier of STEP and REDUCE_ON_PLATEAU decays
+    private String checkpoint = null; //file written in the background every checkpointInterval epochs
+    private int checkpointInterval = 1;
+    private Long seed = null; //random when not set
+    private int shuffleBuffer = 1 << 14; //rows buffered to shuffle a streamed training set, 1 keeps the order of the source
+    private NNCluster cluster = null; //processes sharing the training, each one trains on its own shard of the same training set
 
     public NNParameters(int inputSize, int[] layerSize, int epochs, double alpha, boolean automaticRescaling, NNActivation[] activations, NNError error) {
         if (layerSize.length != activations.length) {
@@ -68,4 +87,223 @@ public class NNParameters {
     public NNError getError() {
         return this.error;
     }
+
+    public NNParameters setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("The batch size must be at least 1");
+        }
+
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public NNParameters setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+
+        this.threads = threads;
+        return this;
+    }
+
+    public int getThreads() {
+        return this.threads;
+    }
+
+    public NNParameters setTrainingMode(NNTrainingMode trainingMode) {
+        this.trainingMode = trainingMode;
+        return this;
+    }
+
+    public NNTrainingMode getTrainingMode() {
+        return this.trainingMode;
+    }
+
+    public NNParameters setNormalization(NNNormalization normalization) {
+        this.normalization = normalization;
+        return this;
+    }
+
+    public NNNormalization getNormalization() {
+        return this.normalization;
+    }
+
+    public NNParameters setOptimizer(NNOptimizer optimizer) {
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    public NNOptimizer getOptimizer() {
+        return this.optimizer;
+    }
+
+    public NNParameters setBeta1(double beta1) {
+        if (beta1 < 0 || beta1 >= 1) {
+            throw new IllegalArgumentException("beta1 must be in [0, 1)");
+        }
+
+        this.beta1 = beta1;
+        return this;
+    }
+
+    public double getBeta1() {
+        return this.beta1;
+    }
+
+    public NNParameters setBeta2(double beta2) {
+        if (beta2 < 0 || beta2 >= 1) {
+            throw new IllegalArgumentException("beta2 must be in [0, 1)");
+        }
+
+        this.beta2 = beta2;
+        return this;
+    }
+
+    public double getBeta2() {
+        return this.beta2;
+    }
+
+    public NNParameters setEpsilon(double epsilon) {
+        if (epsilon <= 0) {
+            throw new IllegalArgumentException("epsilon must be positive");
+        }
+
+        this.epsilon = epsilon;
+        return this;
+    }
+
+    public double getEpsilon() {
+        return this.epsilon;
+    }
+
+    public NNParameters setValidationSplit(double validationSplit) {
+        if (validationSplit < 0 || validationSplit >= 1) {
+            throw new IllegalArgumentException("The validation split must be in [0, 1)");
+        }
+
+        this.validationSplit = validationSplit;
+        return this;
+    }
+
+    public double getValidationSplit() {
+        return this.validationSplit;
+    }
+
+    public NNParameters setValidationInterval(int validationInterval) {
+        if (validationInterval < 1) {
+            throw new IllegalArgumentException("The validation interval must be at least 1");
+        }
+
+        this.validationInterval = validationInterval;
+        return this;
+    }
+
+    public int getValidationInterval() {
+        return this.validationInterval;
+    }
+
+    public NNParameters setPatience(int patience) {
+        if (patience < 0) {
+            throw new IllegalArgumentException("The patience must be positive");
+        }
+
+        this.patience = patience;
+        return this;
+    }
+
+    public int getPatience() {
+        return this.patience;
+    }
+
+    public NNParameters setSchedule(NNSchedule schedule) {
+        this.schedule = schedule;
+        return this;
+    }
+
+    public NNSchedule getSchedule() {
+        return this.schedule;
+    }
+
+    public NNParameters setScheduleStep(int scheduleStep) {
+        if (scheduleStep < 1) {
+            throw new IllegalArgumentException("The schedule step must be at least 1");
+        }
+
+        this.scheduleStep = scheduleStep;
+        return this;
+    }
+
+    public int getScheduleStep() {
+        return this.scheduleStep;
+    }
+
+    public NNParameters setScheduleFactor(double scheduleFactor) {
+        if (scheduleFactor <= 0 || scheduleFactor > 1) {
+            throw new IllegalArgumentException("The schedule factor must be in (0, 1]");
+        }
+
+        this.scheduleFactor = scheduleFactor;
+        return this;
+    }
+
+    public double getScheduleFactor() {
+        return this.scheduleFactor;
+    }
+
+    public NNParameters setCheckpoint(String checkpoint) {
+        this.checkpoint = checkpoint;
+        return this;
+    }
+
+    public String getCheckpoint() {
+        return this.checkpoint;
+    }
+
+    public NNParameters setCheckpointInterval(int checkpointInterval) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("The checkpoint interval must be at least 1");
+        }
+
+        this.checkpointInterval = checkpointInterval;
+        return this;
+    }
+
+    public int getCheckpointInterval() {
+        return this.checkpointInterval;
+    }
+
+    public NNParameters setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Long getSeed() {
+        return this.seed;
+    }
+
+    public NNParameters setShuffleBuffer(int shuffleBuffer) {
+        if (shuffleBuffer < 1) {
+            throw new IllegalArgumentException("The shuffle buffer must hold at least 1 row");
+        }
+
+        this.shuffleBuffer = shuffleBuffer;
+        return this;
+    }
+
+    public int getShuffleBuffer() {
+        return this.shuffleBuffer;
+    }
+
+    public NNParameters setCluster(NNCluster cluster) {
+        this.cluster = cluster;
+        return this;
+    }
+
+    public NNCluster getCluster() {
+        return this.cluster;
+    }
 }
@@ -0,0 +1,18 @@
+package ml;
+
+//execution plan compiled once per network: the kernel of every layer is resolved up front, so the passes never branch on the activation
+final class NNPlan {
+    private final NNLayerKernel[] layers;
+
+    NNPlan(NNActivation[] activations) {
+        this.layers = new NNLayerKernel[activations.length];
+
+        for (int l = 0; l < activations.length; l++) {
+            this.layers[l] = NNLayerKernel.of(activations[l]);
+        }
+    }
+
+    NNLayerKernel layer(int l) {
+        return this.layers[l];
+    }
+}
@@ -0,0 +1,7 @@
+package ml;
+
+public enum NNPrecision {
+    DOUBLE,
+    FLOAT, //half the memory of DOUBLE and the fastest predictions, single precision results
+    INT8 //an eighth of the memory of DOUBLE for large models, predicts slower than FLOAT: the JIT gives int sums no wider vectors than float ones and every layer input is quantized first
+}
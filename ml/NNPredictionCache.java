@@ -0,0 +1,374 @@
+package ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+//bounded cache of predictions keyed on the exact input vector, for traffic that repeats the same rows
+//entries remember the model and the version of its weights they were computed with, the ones computed before a swap of the holder or a training step are dropped when met
+//the entries are spread over segments locked independently, the forward pass of a miss runs outside any lock
+public class NNPredictionCache {
+    private static final int SEGMENTS_PER_PROCESSOR = 4;
+    private static final int SKETCH_ROWS = 4;
+    private static final int[] SKETCH_SEEDS = {0x9e3779b9, 0x85ebca6b, 0xc2b2ae35, 0x27d4eb2f};
+    private static final int SKETCH_RESET = 10; //the frequencies are halved every SKETCH_RESET * capacity lookups of a segment, so that past popularity fades
+
+    private final InferenceModel model; //null when the predictions come from the current model of holder
+    private final InferenceModelHolder holder;
+    private final int capacity;
+    private final NNEviction eviction;
+    private final Segment[] segments;
+
+    private static final class Key {
+        final double[] x;
+        final int hash;
+
+        Key(double[] x, int hash) {
+            this.x = x;
+            this.hash = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hash == this.hash && Arrays.equals(((Key) o).x, this.x);
+        }
+    }
+
+    private static final class Entry {
+        final double[] y;
+        final InferenceModel model;
+        final long version;
+
+        Entry(double[] y, InferenceModel model, long version) {
+            this.y = y;
+            this.model = model;
+            this.version = version;
+        }
+
+        boolean isCurrent(InferenceModel model, long version) {
+            return this.model == model && this.version == version;
+        }
+    }
+
+    //guarded by its own monitor, the map keeps its entries from the least to the most recently used
+    private static final class Segment {
+        final int capacity;
+        final LinkedHashMap<Key, Entry> map;
+        final byte[] sketch; //count-min sketch of the lookups, SKETCH_ROWS rows of 4 bit counters held in bytes, only with TINY_LFU
+        final int sketchMask;
+        int lookups;
+        long hits;
+        long misses;
+        long evictions;
+        long rejections;
+        long invalidations;
+
+        Segment(int capacity, boolean sketch) {
+            int width = Integer.highestOneBit(Math.max(16, capacity - 1) * 2);
+            this.capacity = capacity;
+            this.map = new LinkedHashMap<>(16, 0.75f, true);
+            this.sketch = sketch ? new byte[SKETCH_ROWS * width] : null;
+            this.sketchMask = width - 1;
+        }
+
+        //a copy of the cached prediction, null when there is none for this model
+        double[] get(Key key, InferenceModel model, long version) {
+            this.record(key.hash);
+            Entry e = this.map.get(key);
+
+            if (e != null && !e.isCurrent(model, version)) {
+                this.map.remove(key);
+                this.invalidations++;
+                e = null;
+            }
+
+            if (e == null) {
+                this.misses++;
+                return null;
+            }
+
+            this.hits++;
+            return e.y.clone();
+        }
+
+        void put(Key key, Entry entry) {
+            if (this.map.size() >= this.capacity && !this.map.containsKey(key)) {
+                Iterator<Map.Entry<Key, Entry>> eldest = this.map.entrySet().iterator();
+                Map.Entry<Key, Entry> victim = eldest.next();
+
+                //an outdated victim always leaves, a current one only for a key looked up more often
+                if (this.sketch != null && victim.getValue().isCurrent(entry.model, entry.version) && this.frequency(key.hash) <= this.frequency(victim.getKey().hash)) {
+                    this.rejections++;
+                    return;
+                }
+
+                eldest.remove();
+                this.evictions++;
+            }
+
+            this.map.put(key, entry);
+        }
+
+        private void record(int hash) {
+            if (this.sketch == null) {
+                return;
+            }
+
+            for (int i = 0; i < SKETCH_ROWS; i++) {
+                int p = this.slot(hash, i);
+
+                if (this.sketch[p] < 15) {
+                    this.sketch[p]++;
+                }
+            }
+
+            if (++this.lookups == SKETCH_RESET * this.capacity) {
+                for (int p = 0; p < this.sketch.length; p++) {
+                    this.sketch[p] >>= 1;
+                }
+
+                this.lookups /= 2;
+            }
+        }
+
+        private int frequency(int hash) {
+            int f = 15;
+
+            for (int i = 0; i < SKETCH_ROWS; i++) {
+                f = Math.min(f, this.sketch[this.slot(hash, i)]);
+            }
+
+            return f;
+        }
+
+        private int slot(int hash, int row) {
+            int h = hash * SKETCH_SEEDS[row];
+            return row * (this.sketchMask + 1) + ((h ^ h >>> 16) & this.sketchMask);
+        }
+    }
+
+    //predictions of a fixed model, e.g. the live view of a training network
+    public NNPredictionCache(InferenceModel model, int capacity, NNEviction eviction) {
+        this(model, null, capacity, eviction);
+    }
+
+    //predictions of whichever model holder serves, the entries of a replaced model are never returned
+    public NNPredictionCache(InferenceModelHolder holder, int capacity, NNEviction eviction) {
+        this(null, holder, capacity, eviction);
+    }
+
+    private NNPredictionCache(InferenceModel model, InferenceModelHolder holder, int capacity, NNEviction eviction) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The cache must hold at least one prediction");
+        }
+
+        int segments = Integer.highestOneBit(Math.min(capacity, SEGMENTS_PER_PROCESSOR * Runtime.getRuntime().availableProcessors()));
+        this.model = model;
+        this.holder = holder;
+        this.capacity = capacity;
+        this.eviction = eviction;
+        this.segments = new Segment[segments];
+
+        for (int i = 0; i < segments; i++) { //the capacities add up to capacity exactly
+            this.segments[i] = new Segment(capacity / segments + (i < capacity % segments ? 1 : 0), eviction == NNEviction.TINY_LFU);
+        }
+    }
+
+    public double[] getAnswer(double[] input) {
+        InferenceModel model = this.current();
+        check(model, input);
+        long version = model.getVersion(); //read before predicting, a prediction racing a training step is stored as outdated
+        Key key = new Key(input, hash(input));
+        Segment s = this.segment(key.hash);
+        double[] y;
+
+        synchronized (s) {
+            y = s.get(key, model, version);
+        }
+
+        if (y != null) {
+            return y;
+        }
+
+        y = model.getAnswer(input);
+
+        synchronized (s) {
+            s.put(new Key(input.clone(), key.hash), new Entry(y.clone(), model, version));
+        }
+
+        return y;
+    }
+
+    //same as InferenceModel.predict, the missing rows are predicted together in one batch
+    public void predict(double[][] inputs, double[][] out) {
+        if (inputs.length != out.length) {
+            throw new IllegalArgumentException("Inputs and outputs must have the same number of rows");
+        }
+
+        InferenceModel model = this.current();
+        long version = model.getVersion();
+        List<Integer> missing = new ArrayList<>();
+        Key[] keys = new Key[inputs.length];
+
+        for (int r = 0; r < inputs.length; r++) {
+            check(model, inputs[r]);
+
+            if (out[r].length != model.getOutputSize()) {
+                throw new IllegalArgumentException("Prediction data length mismatch at row " + r);
+            }
+
+            keys[r] = new Key(inputs[r], hash(inputs[r]));
+            Segment s = this.segment(keys[r].hash);
+            double[] y;
+
+            synchronized (s) {
+                y = s.get(keys[r], model, version);
+            }
+
+            if (y != null) {
+                System.arraycopy(y, 0, out[r], 0, y.length);
+            } else {
+                missing.add(r);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        double[][] x = new double[missing.size()][];
+        double[][] y = new double[missing.size()][model.getOutputSize()];
+
+        for (int i = 0; i < x.length; i++) {
+            x[i] = inputs[missing.get(i)];
+        }
+
+        model.predict(x, y);
+
+        for (int i = 0; i < x.length; i++) {
+            int r = missing.get(i);
+            Segment s = this.segment(keys[r].hash);
+            System.arraycopy(y[i], 0, out[r], 0, y[i].length);
+
+            synchronized (s) {
+                s.put(new Key(x[i].clone(), keys[r].hash), new Entry(y[i], model, version));
+            }
+        }
+    }
+
+    public void clear() {
+        for (Segment s: this.segments) {
+            synchronized (s) {
+                s.map.clear();
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public NNEviction getEviction() {
+        return this.eviction;
+    }
+
+    //entries held, outdated ones included until they are met or evicted
+    public int size() {
+        int size = 0;
+
+        for (Segment s: this.segments) {
+            synchronized (s) {
+                size += s.map.size();
+            }
+        }
+
+        return size;
+    }
+
+    public long getHits() {
+        return this.sum(0);
+    }
+
+    //outdated entries count as misses
+    public long getMisses() {
+        return this.sum(1);
+    }
+
+    //entries removed to make room for new ones
+    public long getEvictions() {
+        return this.sum(2);
+    }
+
+    //predictions TINY_LFU did not admit
+    public long getRejections() {
+        return this.sum(3);
+    }
+
+    //entries dropped because the weights changed or the model was swapped since they were computed
+    public long getInvalidations() {
+        return this.sum(4);
+    }
+
+    public double getHitRate() {
+        long hits = this.getHits();
+        long lookups = hits + this.getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s cache: %d/%d entries, %d hits, %d misses (hit rate %.1f%%), %d evictions, %d rejections, %d invalidations", this.eviction, this.size(), this.capacity, this.getHits(), this.getMisses(), 100 * this.getHitRate(), this.getEvictions(), this.getRejections(), this.getInvalidations());
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+
+        for (Segment s: this.segments) {
+            synchronized (s) {
+                sum += switch (counter) {
+                    case 0 -> s.hits;
+                    case 1 -> s.misses;
+                    case 2 -> s.evictions;
+                    case 3 -> s.rejections;
+                    default -> s.invalidations;
+                };
+            }
+        }
+
+        return sum;
+    }
+
+    private InferenceModel current() {
+        return this.model != null ? this.model : this.holder.get();
+    }
+
+    private Segment segment(int hash) {
+        return this.segments[(hash ^ hash >>> 16) & (this.segments.length - 1)];
+    }
+
+    private static void check(InferenceModel model, double[] input) {
+        if (input.length != model.getInputSize()) {
+            throw new IllegalArgumentException("Prediction data length mismatch");
+        }
+    }
+
+    //mixes the bits of every value, equal under Arrays.equals means equal hashes
+    private static int hash(double[] x) {
+        long h = x.length;
+
+        for (double v: x) {
+            h = (h ^ Double.doubleToLongBits(v)) * 0x9e3779b97f4a7c15L;
+            h ^= h >>> 29;
+        }
+
+        return (int) (h ^ h >>> 32);
+    }
+}
@@ -0,0 +1,151 @@
+package ml;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//background thread streaming a data source into normalized mini-batches, so reading and parsing overlap with training
+//rows go through a bounded shuffle buffer: each batch row is drawn at random among the buffered ones and its slot is refilled from the source
+//every consumer owns two batch buffers (double buffering), after the last batch of an epoch each consumer receives one END marker
+final class NNPrefetcher extends Thread {
+    static final Batch END = new Batch(0, 0);
+
+    static final class Batch {
+        final double[] input;
+        final double[] target;
+        int rows;
+
+        Batch(int inputs, int targets) {
+            this.input = new double[inputs];
+            this.target = new double[targets];
+        }
+    }
+
+    private final NNDataSource source;
+    private final NNNormalizer normalizer;
+    private final int batchSize;
+    private final int shuffleBuffer;
+    private final int consumers;
+    private final int firstEpoch;
+    private final int epochs;
+    private final long seed;
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> full;
+    private volatile Exception failure;
+
+    NNPrefetcher(NNDataSource source, NNNormalizer normalizer, int batchSize, int shuffleBuffer, int consumers, int firstEpoch, int epochs, long seed) {
+        super("NNPrefetcher");
+        this.setDaemon(true);
+        this.source = source;
+        this.normalizer = normalizer;
+        this.batchSize = batchSize;
+        this.shuffleBuffer = shuffleBuffer;
+        this.consumers = consumers;
+        this.firstEpoch = firstEpoch;
+        this.epochs = epochs;
+        this.seed = seed;
+        this.free = new ArrayBlockingQueue<>(2 * consumers);
+        this.full = new ArrayBlockingQueue<>(3 * consumers); //room for the batches and the END markers
+
+        for (int i = 0; i < 2 * consumers; i++) {
+            this.free.add(new Batch(batchSize * source.getInputSize(), batchSize * source.getOutputSize()));
+        }
+    }
+
+    @Override
+    public void run() {
+        int inputSize = this.source.getInputSize();
+        int outputSize = this.source.getOutputSize();
+        double[] x = new double[this.shuffleBuffer * inputSize];
+        double[] y = new double[this.shuffleBuffer * outputSize];
+
+        try {
+            for (int e = this.firstEpoch; e < this.epochs; e++) {
+                Random random = new Random(this.seed + e); //the order of every epoch is reproducible, also after a resume
+                Batch batch = null;
+                int count = 0;
+                boolean more = true;
+                this.source.reset();
+
+                while (true) {
+                    while (more && count < this.shuffleBuffer) {
+                        more = this.source.next(x, count * inputSize, y, count * outputSize);
+
+                        if (more) {
+                            this.normalizer.apply(x, count * inputSize, 1);
+                            count++;
+                        }
+                    }
+
+                    if (count == 0) {
+                        break;
+                    }
+
+                    if (batch == null) {
+                        batch = this.free.take();
+                        batch.rows = 0;
+                    }
+
+                    int j = random.nextInt(count);
+                    count--;
+                    System.arraycopy(x, j * inputSize, batch.input, batch.rows * inputSize, inputSize);
+                    System.arraycopy(y, j * outputSize, batch.target, batch.rows * outputSize, outputSize);
+                    System.arraycopy(x, count * inputSize, x, j * inputSize, inputSize); //the last buffered row fills the hole
+                    System.arraycopy(y, count * outputSize, y, j * outputSize, outputSize);
+
+                    if (++batch.rows == this.batchSize) {
+                        this.full.put(batch);
+                        batch = null;
+                    }
+                }
+
+                if (batch != null) {
+                    this.full.put(batch);
+                }
+
+                for (int i = 0; i < this.consumers; i++) {
+                    this.full.put(END);
+                }
+            }
+        } catch (InterruptedException e) {
+            //training is over
+        } catch (IOException | RuntimeException e) {
+            this.failure = e;
+        }
+    }
+
+    //next batch or END, also END once the thread has died so consumers never wait forever
+    Batch take() throws InterruptedException {
+        while (true) {
+            Batch b = this.full.poll(10, TimeUnit.MILLISECONDS);
+
+            if (b != null) {
+                return b;
+            }
+
+            if (!this.isAlive() && this.full.isEmpty()) {
+                return END;
+            }
+        }
+    }
+
+    void release(Batch b) {
+        this.free.add(b);
+    }
+
+    Exception getFailure() {
+        return this.failure;
+    }
+
+    void close() {
+        this.interrupt();
+
+        try {
+            this.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
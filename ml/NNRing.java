@@ -0,0 +1,208 @@
+package ml;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+//ring all-reduce over tcp: a reduce-scatter followed by an all-gather, each process sends and receives 2 * (n - 1) / n of the buffer whatever the size of the cluster
+//payloads travel as float32, which halves the traffic, and the reduced values are rounded the same way on every process so that all of them end up with identical bits
+final class NNRing implements Closeable {
+    private final int rank;
+    private final int size;
+    private final SocketChannel next; //written to
+    private final SocketChannel previous; //read from
+    private final Selector selector;
+    private ByteBuffer out = ByteBuffer.allocateDirect(0);
+    private ByteBuffer in = ByteBuffer.allocateDirect(0);
+
+    private NNRing(int rank, int size, SocketChannel next, SocketChannel previous) throws IOException {
+        this.rank = rank;
+        this.size = size;
+        this.next = next;
+        this.previous = previous;
+        this.selector = Selector.open();
+
+        if (next != null) {
+            next.configureBlocking(false);
+            previous.configureBlocking(false);
+        }
+    }
+
+    static NNRing connect(NNCluster cluster) throws IOException {
+        int rank = cluster.getRank();
+        int size = cluster.getSize();
+
+        if (size == 1) {
+            return new NNRing(0, 1, null, null);
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(cluster.getAddress(rank));
+            SocketChannel next = null;
+            long deadline = System.currentTimeMillis() + cluster.getConnectTimeout();
+
+            while (next == null) {
+                try {
+                    next = SocketChannel.open(cluster.getAddress((rank + 1) % size));
+                } catch (ConnectException e) {
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new IOException("Rank " + (rank + 1) % size + " did not come up at " + cluster.getAddress((rank + 1) % size), e);
+                    }
+
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ie) {
+                        throw new IOException("Interrupted while connecting", ie);
+                    }
+                }
+            }
+
+            next.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SocketChannel previous = server.accept();
+            previous.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            return new NNRing(rank, size, next, previous);
+        }
+    }
+
+    int getRank() {
+        return this.rank;
+    }
+
+    int getSize() {
+        return this.size;
+    }
+
+    //replaces values with their sum over every process
+    void allReduce(double[] values) throws IOException {
+        if (this.size == 1) {
+            return;
+        }
+
+        for (int s = 0; s < this.size - 1; s++) { //reduce-scatter, afterwards this process holds the sum of chunk rank + 1
+            int send = Math.floorMod(this.rank - s, this.size);
+            int receive = Math.floorMod(this.rank - s - 1, this.size);
+            this.exchange(values, send, receive, true);
+        }
+
+        int owned = (this.rank + 1) % this.size;
+
+        for (int i = this.chunkStart(values, owned); i < this.chunkStart(values, owned + 1); i++) {
+            values[i] = (float) values[i]; //the other processes receive it as a float
+        }
+
+        for (int s = 0; s < this.size - 1; s++) { //all-gather
+            int send = Math.floorMod(this.rank + 1 - s, this.size);
+            int receive = Math.floorMod(this.rank - s, this.size);
+            this.exchange(values, send, receive, false);
+        }
+    }
+
+    //replaces values with the ones of rank 0, passed along the ring
+    void broadcast(double[] values) throws IOException {
+        if (this.size == 1) {
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Double.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (this.rank != 0) {
+            while (buffer.hasRemaining()) {
+                this.await(this.previous, SelectionKey.OP_READ);
+                this.previous.read(buffer);
+            }
+
+            buffer.flip();
+            buffer.asDoubleBuffer().get(values);
+        } else {
+            buffer.asDoubleBuffer().put(values);
+        }
+
+        if (this.rank != this.size - 1) {
+            buffer.rewind();
+
+            while (buffer.hasRemaining()) {
+                this.await(this.next, SelectionKey.OP_WRITE);
+                this.next.write(buffer);
+            }
+        }
+    }
+
+    //sends chunk send to the next process while receiving chunk receive from the previous one, both at once so that neither side fills its socket buffer and stalls
+    private void exchange(double[] values, int send, int receive, boolean add) throws IOException {
+        int sendStart = this.chunkStart(values, send);
+        int sendLength = this.chunkStart(values, send + 1) - sendStart;
+        int receiveStart = this.chunkStart(values, receive);
+        int receiveLength = this.chunkStart(values, receive + 1) - receiveStart;
+
+        if (this.out.capacity() < sendLength * Float.BYTES) {
+            this.out = ByteBuffer.allocateDirect(sendLength * Float.BYTES);
+        }
+
+        if (this.in.capacity() < receiveLength * Float.BYTES) {
+            this.in = ByteBuffer.allocateDirect(receiveLength * Float.BYTES);
+        }
+
+        this.out.clear().order(ByteOrder.LITTLE_ENDIAN);
+        this.in.clear().limit(receiveLength * Float.BYTES);
+        this.in.order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < sendLength; i++) {
+            this.out.putFloat((float) values[sendStart + i]);
+        }
+
+        this.out.flip();
+        SelectionKey writeKey = this.next.register(this.selector, SelectionKey.OP_WRITE);
+        SelectionKey readKey = this.previous.register(this.selector, SelectionKey.OP_READ);
+
+        while (this.out.hasRemaining() || this.in.hasRemaining()) {
+            writeKey.interestOps(this.out.hasRemaining() ? SelectionKey.OP_WRITE : 0);
+            readKey.interestOps(this.in.hasRemaining() ? SelectionKey.OP_READ : 0);
+            this.selector.select();
+            this.selector.selectedKeys().clear();
+
+            if (this.out.hasRemaining()) {
+                this.next.write(this.out);
+            }
+
+            if (this.in.hasRemaining() && this.previous.read(this.in) < 0) {
+                throw new IOException("Rank " + Math.floorMod(this.rank - 1, this.size) + " closed the connection");
+            }
+        }
+
+        this.in.flip();
+
+        for (int i = 0; i < receiveLength; i++) {
+            float v = this.in.getFloat();
+            values[receiveStart + i] = add ? values[receiveStart + i] + v : v;
+        }
+    }
+
+    private void await(SocketChannel channel, int op) throws IOException {
+        SelectionKey key = channel.register(this.selector, op);
+        key.interestOps(op);
+        this.selector.select();
+        this.selector.selectedKeys().clear();
+    }
+
+    private int chunkStart(double[] values, int chunk) {
+        return (int) ((long) values.length * chunk / this.size);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.selector.close();
+
+        if (this.next != null) {
+            this.next.close();
+            this.previous.close();
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package ml;
+
+public enum NNSchedule {
+    CONSTANT,
+    STEP,
+    COSINE,
+    REDUCE_ON_PLATEAU
+}
@@ -0,0 +1,338 @@
+package ml;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+//hyperparameter search over one training set shared read-only by every candidate, the normalization is fitted once
+//candidates train concurrently, each on its own threads, and are ranked by their loss on the held out rows at the end of the training set
+public class NNSearch {
+    private static final int ETA = 3; //successive halving keeps a third of the candidates and triples their epochs at every round
+
+    private final NNDataset trainingSet;
+    private final NNNormalizer normalizer;
+    private int[][] hiddenLayers = {{16}};
+    private NNActivation[] activations = {NNActivation.RELU};
+    private NNActivation outputActivation = NNActivation.LINEAR;
+    private double[] alphas = {0.001};
+    private int[] batchSizes = {32};
+    private NNOptimizer[] optimizers = {NNOptimizer.ADAM};
+    private NNError error = NNError.MSE;
+    private int epochs = 27; //per candidate, the budget of the longest ones with successive halving and hyperband
+    private double validationSplit = 0.2;
+    private int patience = 0;
+    private int samples = 27; //candidates drawn by RANDOM and SUCCESSIVE_HALVING
+    private int parallelism = Runtime.getRuntime().availableProcessors(); //candidates trained at once
+    private int threadsPerCandidate = 1;
+    private long seed = 42;
+
+    public NNSearch(NNDataset trainingSet, NNNormalization normalization) {
+        this.trainingSet = trainingSet;
+        this.normalizer = NeuralNetwork.fit(trainingSet, normalization);
+    }
+
+    //sizes of the hidden layers of each choice, the output layer is sized after the dataset
+    public NNSearch setHiddenLayers(int[]... hiddenLayers) {
+        if (hiddenLayers.length == 0) {
+            throw new IllegalArgumentException("At least one choice is needed");
+        }
+
+        this.hiddenLayers = hiddenLayers.clone();
+        return this;
+    }
+
+    //activation of the hidden layers
+    public NNSearch setActivations(NNActivation... activations) {
+        if (activations.length == 0) {
+            throw new IllegalArgumentException("At least one choice is needed");
+        }
+
+        this.activations = activations.clone();
+        return this;
+    }
+
+    public NNSearch setOutputActivation(NNActivation outputActivation) {
+        this.outputActivation = outputActivation;
+        return this;
+    }
+
+    public NNSearch setAlphas(double... alphas) {
+        if (alphas.length == 0) {
+            throw new IllegalArgumentException("At least one choice is needed");
+        }
+
+        for (double alpha: alphas) {
+            if (alpha <= 0) {
+                throw new IllegalArgumentException("The learning rates must be positive");
+            }
+        }
+
+        this.alphas = alphas.clone();
+        return this;
+    }
+
+    public NNSearch setBatchSizes(int... batchSizes) {
+        if (batchSizes.length == 0) {
+            throw new IllegalArgumentException("At least one choice is needed");
+        }
+
+        this.batchSizes = batchSizes.clone();
+        return this;
+    }
+
+    public NNSearch setOptimizers(NNOptimizer... optimizers) {
+        if (optimizers.length == 0) {
+            throw new IllegalArgumentException("At least one choice is needed");
+        }
+
+        this.optimizers = optimizers.clone();
+        return this;
+    }
+
+    public NNSearch setError(NNError error) {
+        this.error = error;
+        return this;
+    }
+
+    public NNSearch setEpochs(int epochs) {
+        if (epochs < 1) {
+            throw new IllegalArgumentException("The candidates need at least one epoch");
+        }
+
+        this.epochs = epochs;
+        return this;
+    }
+
+    public NNSearch setValidationSplit(double validationSplit) {
+        if (validationSplit <= 0 || validationSplit >= 1) {
+            throw new IllegalArgumentException("The validation split must be in (0, 1)");
+        }
+
+        this.validationSplit = validationSplit;
+        return this;
+    }
+
+    //early stopping of GRID and RANDOM candidates, 0 trains all of them for every epoch, SUCCESSIVE_HALVING and HYPERBAND ignore it and stop candidates by rounds
+    public NNSearch setPatience(int patience) {
+        if (patience < 0) {
+            throw new IllegalArgumentException("The patience must be positive");
+        }
+
+        this.patience = patience;
+        return this;
+    }
+
+    public NNSearch setSamples(int samples) {
+        if (samples < 1) {
+            throw new IllegalArgumentException("At least one sample is needed");
+        }
+
+        this.samples = samples;
+        return this;
+    }
+
+    public NNSearch setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("At least one candidate must train at a time");
+        }
+
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public NNSearch setThreadsPerCandidate(int threadsPerCandidate) {
+        if (threadsPerCandidate < 1) {
+            throw new IllegalArgumentException("Every candidate needs a thread");
+        }
+
+        this.threadsPerCandidate = threadsPerCandidate;
+        return this;
+    }
+
+    public NNSearch setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    //every candidate trained, best first
+    public List<NNSearchResult> run(NNSearchStrategy strategy) {
+        Random random = new Random(this.seed);
+        List<NNSearchResult> all = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(this.parallelism, r -> {
+            Thread t = new Thread(r, "NNSearch");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try {
+            switch (strategy) {
+                case GRID -> {
+                    all.addAll(this.grid());
+                    this.train(pool, all, this.epochs, this.patience, random);
+                }
+                case RANDOM -> {
+                    all.addAll(this.sample(this.samples, random));
+                    this.train(pool, all, this.epochs, this.patience, random);
+                }
+                case SUCCESSIVE_HALVING -> all.addAll(this.successiveHalving(pool, this.samples, this.epochs / (int) Math.pow(ETA, this.rounds()), random));
+                case HYPERBAND -> {
+                    int rounds = this.rounds();
+
+                    for (int s = rounds; s >= 0; s--) { //from many candidates starting with a single epoch to a few trained for the whole budget
+                        int n = (int) Math.ceil((double) (rounds + 1) / (s + 1) * Math.pow(ETA, s));
+                        all.addAll(this.successiveHalving(pool, n, Math.max(1, this.epochs / (int) Math.pow(ETA, s)), random));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        all.sort(Comparator.comparingDouble(NNSearchResult::getValidationLoss));
+        return all;
+    }
+
+    public static String leaderboard(List<NNSearchResult> results) {
+        StringBuilder s = new StringBuilder();
+
+        for (int i = 0; i < results.size(); i++) {
+            s.append(String.format("%3d. ", i + 1)).append(results.get(i)).append('\n');
+        }
+
+        return s.toString();
+    }
+
+    //rounds of successive halving that fit the epoch budget
+    private int rounds() {
+        int rounds = 0;
+
+        while (Math.pow(ETA, rounds + 1) <= this.epochs) {
+            rounds++;
+        }
+
+        return rounds;
+    }
+
+    //trains n candidates for epochs, then keeps the best third for three times as many epochs until the budget is spent or one candidate is left
+    private List<NNSearchResult> successiveHalving(ExecutorService pool, int n, int epochs, Random random) {
+        List<NNSearchResult> candidates = this.sample(n, random);
+        List<NNSearchResult> alive = new ArrayList<>(candidates);
+
+        while (true) {
+            this.train(pool, alive, Math.min(epochs, this.epochs), 0, random); //no early stopping, a round would end on the best weights while the optimizer state and the epochs go on
+            alive.sort(Comparator.comparingDouble(NNSearchResult::getValidationLoss));
+
+            if (epochs >= this.epochs || alive.size() <= 1) {
+                break;
+            }
+
+            List<NNSearchResult> survivors = new ArrayList<>(alive.subList(0, Math.max(1, alive.size() / ETA)));
+
+            for (NNSearchResult r: alive.subList(survivors.size(), alive.size())) {
+                r.network = null;
+            }
+
+            alive = survivors;
+            epochs *= ETA;
+        }
+
+        return candidates;
+    }
+
+    //trains every candidate up to epochs, candidates already trained for some epochs go on from there
+    private void train(ExecutorService pool, List<NNSearchResult> candidates, int epochs, int patience, Random random) {
+        List<Future<?>> running = new ArrayList<>();
+
+        for (NNSearchResult r: candidates) {
+            long seed = random.nextLong();
+            running.add(pool.submit(() -> this.train(r, epochs, patience, seed)));
+        }
+
+        try {
+            for (Future<?> f: running) {
+                f.get();
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException("The search was interrupted", e);
+        }
+    }
+
+    private void train(NNSearchResult r, int epochs, int patience, long seed) {
+        if (r.failure != null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+
+        try {
+            if (r.network == null) {
+                int[] layers = new int[r.getHiddenLayers().length + 1];
+                NNActivation[] activations = new NNActivation[layers.length];
+
+                for (int l = 0; l < layers.length - 1; l++) {
+                    layers[l] = r.getHiddenLayers()[l];
+                    activations[l] = r.getActivation();
+                }
+
+                layers[layers.length - 1] = this.trainingSet.getOutputSize();
+                activations[layers.length - 1] = this.outputActivation;
+
+                NNParameters p = new NNParameters(this.trainingSet.getInputSize(), layers, epochs, r.getAlpha(), false, activations, this.error).setBatchSize(r.getBatchSize()).setOptimizer(r.getOptimizer()).setThreads(this.threadsPerCandidate).setValidationSplit(this.validationSplit).setPatience(patience).setSeed(seed);
+                r.network = new NeuralNetwork(this.trainingSet, p, this.normalizer);
+                r.network.train();
+            } else {
+                r.network.train(epochs);
+            }
+
+            r.epochs = r.network.getEpochsRun();
+            r.validationLoss = r.network.validationLoss();
+        } catch (RuntimeException e) {
+            r.failure = e.getMessage();
+            r.validationLoss = Double.POSITIVE_INFINITY;
+            r.network = null;
+        }
+
+        r.trainingNanos += System.nanoTime() - start;
+    }
+
+    private List<NNSearchResult> grid() {
+        List<NNSearchResult> grid = new ArrayList<>();
+
+        for (int[] hidden: this.hiddenLayers) {
+            for (NNActivation activation: this.activations) {
+                for (double alpha: this.alphas) {
+                    for (int batchSize: this.batchSizes) {
+                        for (NNOptimizer optimizer: this.optimizers) {
+                            grid.add(new NNSearchResult(hidden.clone(), activation, alpha, batchSize, optimizer));
+                        }
+                    }
+                }
+            }
+        }
+
+        return grid;
+    }
+
+    private List<NNSearchResult> sample(int n, Random random) {
+        List<NNSearchResult> sample = new ArrayList<>();
+        double minAlpha = Double.POSITIVE_INFINITY;
+        double maxAlpha = 0;
+
+        for (double alpha: this.alphas) {
+            minAlpha = Math.min(minAlpha, alpha);
+            maxAlpha = Math.max(maxAlpha, alpha);
+        }
+
+        for (int i = 0; i < n; i++) {
+            double alpha = Math.exp(Math.log(minAlpha) + random.nextDouble() * (Math.log(maxAlpha) - Math.log(minAlpha)));
+            sample.add(new NNSearchResult(this.hiddenLayers[random.nextInt(this.hiddenLayers.length)].clone(), this.activations[random.nextInt(this.activations.length)], alpha, this.batchSizes[random.nextInt(this.batchSizes.length)], this.optimizers[random.nextInt(this.optimizers.length)]));
+        }
+
+        return sample;
+    }
+}
@@ -0,0 +1,73 @@
+package ml;
+
+import java.util.Arrays;
+
+//one candidate of a hyperparameter search, ranked by its validation loss
+public class NNSearchResult {
+    private final int[] hiddenLayers;
+    private final NNActivation activation;
+    private final double alpha;
+    private final int batchSize;
+    private final NNOptimizer optimizer;
+    NeuralNetwork network; //dropped when the candidate is eliminated
+    double validationLoss = Double.POSITIVE_INFINITY;
+    int epochs;
+    long trainingNanos;
+    String failure;
+
+    NNSearchResult(int[] hiddenLayers, NNActivation activation, double alpha, int batchSize, NNOptimizer optimizer) {
+        this.hiddenLayers = hiddenLayers;
+        this.activation = activation;
+        this.alpha = alpha;
+        this.batchSize = batchSize;
+        this.optimizer = optimizer;
+    }
+
+    public int[] getHiddenLayers() {
+        return this.hiddenLayers.clone();
+    }
+
+    public NNActivation getActivation() {
+        return this.activation;
+    }
+
+    public double getAlpha() {
+        return this.alpha;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    public NNOptimizer getOptimizer() {
+        return this.optimizer;
+    }
+
+    public double getValidationLoss() {
+        return this.validationLoss;
+    }
+
+    //epochs trained before the candidate finished or was eliminated
+    public int getEpochs() {
+        return this.epochs;
+    }
+
+    public double getTrainingSeconds() {
+        return this.trainingNanos / 1e9;
+    }
+
+    //null unless the training failed, e.g. diverged beyond recovery
+    public String getFailure() {
+        return this.failure;
+    }
+
+    //the trained network of the candidates that were not eliminated, null otherwise
+    public NeuralNetwork getNetwork() {
+        return this.network;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-16s %-8s alpha=%-10.3g batch=%-5d %-8s epochs=%-5d %.2fs loss=%s", Arrays.toString(this.hiddenLayers), this.activation, this.alpha, this.batchSize, this.optimizer, this.epochs, this.getTrainingSeconds(), this.failure != null ? "failed (" + this.failure + ")" : this.validationLoss);
+    }
+}
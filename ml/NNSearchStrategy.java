@@ -0,0 +1,8 @@
+package ml;
+
+public enum NNSearchStrategy {
+    GRID, //every combination of the choices
+    RANDOM, //a given number of random combinations, the learning rate drawn log-uniformly between the smallest and the largest choice
+    SUCCESSIVE_HALVING, //random combinations trained a few epochs at a time, only the best third of each round goes on
+    HYPERBAND //successive halving repeated from many short candidates down to a few full-length ones
+}
@@ -0,0 +1,285 @@
+package ml;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+//inputs stored in compressed sparse rows, only the non zero features take memory: row r owns columns and values [rowPointer[r], rowPointer[r + 1])
+//networks trained on it only multiply the non zeros of the first layer, read() still hands out dense rows to everything else
+public class NNSparseDataset implements NNDataset {
+    private final int inputSize;
+    private final int outputSize;
+    private final int[] rowPointer;
+    private final int[] columns; //ascending within each row
+    private final double[] values;
+    private final double[] objectives; //dense, row-major
+
+    NNSparseDataset(int inputSize, int outputSize, int[] rowPointer, int[] columns, double[] values, double[] objectives) {
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.rowPointer = rowPointer;
+        this.columns = columns;
+        this.values = values;
+        this.objectives = objectives;
+    }
+
+    //drops the zeros of any dataset, e.g. a NNCSVDataset over a mostly zero csv file
+    public static NNSparseDataset of(NNDataset set) {
+        int inputSize = set.getInputSize();
+        int outputSize = set.getOutputSize();
+        double[] x = new double[inputSize];
+        int[] rowPointer = new int[set.size() + 1];
+        int[] columns = new int[1024];
+        double[] values = new double[1024];
+        double[] objectives = new double[set.size() * outputSize];
+        int n = 0;
+
+        for (int r = 0; r < set.size(); r++) {
+            set.read(r, x, 0, objectives, r * outputSize);
+
+            for (int j = 0; j < inputSize; j++) {
+                if (x[j] != 0) {
+                    if (n == columns.length) {
+                        columns = Arrays.copyOf(columns, n * 2);
+                        values = Arrays.copyOf(values, n * 2);
+                    }
+
+                    columns[n] = j;
+                    values[n++] = x[j];
+                }
+            }
+
+            rowPointer[r + 1] = n;
+        }
+
+        return new NNSparseDataset(inputSize, outputSize, rowPointer, Arrays.copyOf(columns, n), Arrays.copyOf(values, n), objectives);
+    }
+
+    //libsvm format, one row per line: "label[,label...] index:value index:value ...", indices count from 1 and missing ones are zeros
+    //inputSize 0 takes the largest index of the file
+    public static NNSparseDataset fromLibSVM(String filename, int inputSize) throws IOException {
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            if (fc.size() > Integer.MAX_VALUE) {
+                throw new IOException("Files over 2GB are not supported: " + filename);
+            }
+
+            MappedByteBuffer b = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            int[] rowPointer = new int[1024];
+            int[] columns = new int[1024];
+            double[] values = new double[1024];
+            double[] objectives = new double[1024];
+            int outputSize = -1;
+            int rows = 0;
+            int n = 0;
+            int maxIndex = 0;
+            int p = 0;
+
+            while (p < b.limit()) {
+                int end = p;
+
+                while (end < b.limit() && b.get(end) != '\n') {
+                    end++;
+                }
+
+                int q = skipSpaces(b, p, end);
+
+                if (q == end || b.get(q) == '#' || b.get(q) == '\r') { //blank or comment line
+                    p = end + 1;
+                    continue;
+                }
+
+                if (rows + 1 == rowPointer.length) {
+                    rowPointer = Arrays.copyOf(rowPointer, rowPointer.length * 2);
+                }
+
+                int labels = 0;
+
+                while (true) { //labels, separated by commas
+                    int e = q;
+
+                    while (e < end && b.get(e) != ',' && b.get(e) != ' ' && b.get(e) != '\t' && b.get(e) != '\r') {
+                        e++;
+                    }
+
+                    if (rows * Math.max(outputSize, 1) + labels == objectives.length) {
+                        objectives = Arrays.copyOf(objectives, objectives.length * 2);
+                    }
+
+                    objectives[rows * Math.max(outputSize, 1) + labels++] = NNCSVDataset.parseDouble(b, q, e);
+                    q = e + 1;
+
+                    if (e >= end || b.get(e) != ',') {
+                        break;
+                    }
+                }
+
+                if (outputSize == -1) {
+                    outputSize = labels;
+                } else if (labels != outputSize) {
+                    throw new IOException("Row " + rows + " has " + labels + " labels, expected " + outputSize);
+                }
+
+                int previous = 0;
+
+                for (q = skipSpaces(b, q, end); q < end && b.get(q) != '#' && b.get(q) != '\r'; q = skipSpaces(b, q, end)) { //index:value pairs
+                    int colon = q;
+                    int index = 0;
+
+                    while (colon < end && b.get(colon) >= '0' && b.get(colon) <= '9') {
+                        index = index * 10 + (b.get(colon++) - '0');
+                    }
+
+                    if (colon == end || b.get(colon) != ':' || index <= previous) {
+                        throw new IOException("Row " + rows + ": expected ascending index:value pairs with indices from 1");
+                    }
+
+                    int e = colon + 1;
+
+                    while (e < end && b.get(e) != ' ' && b.get(e) != '\t' && b.get(e) != '\r') {
+                        e++;
+                    }
+
+                    double v = NNCSVDataset.parseDouble(b, colon + 1, e);
+                    previous = index;
+                    q = e;
+
+                    if (v == 0) {
+                        continue;
+                    }
+
+                    if (n == columns.length) {
+                        columns = Arrays.copyOf(columns, n * 2);
+                        values = Arrays.copyOf(values, n * 2);
+                    }
+
+                    columns[n] = index - 1;
+                    values[n++] = v;
+                    maxIndex = Math.max(maxIndex, index);
+                }
+
+                rowPointer[++rows] = n;
+                p = end + 1;
+            }
+
+            if (rows == 0) {
+                throw new IOException("Empty dataset: " + filename);
+            }
+
+            if (inputSize == 0) {
+                inputSize = maxIndex;
+            } else if (maxIndex > inputSize) {
+                throw new IOException("Feature index " + maxIndex + " is beyond the " + inputSize + " inputs");
+            }
+
+            return new NNSparseDataset(inputSize, outputSize, Arrays.copyOf(rowPointer, rows + 1), Arrays.copyOf(columns, n), Arrays.copyOf(values, n), Arrays.copyOf(objectives, rows * outputSize));
+        }
+    }
+
+    private static int skipSpaces(MappedByteBuffer b, int p, int end) {
+        while (p < end && (b.get(p) == ' ' || b.get(p) == '\t')) {
+            p++;
+        }
+
+        return p;
+    }
+
+    @Override
+    public int size() {
+        return this.rowPointer.length - 1;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    @Override
+    public void read(int row, double[] x, int xOffset, double[] y, int yOffset) {
+        Arrays.fill(x, xOffset, xOffset + this.inputSize, 0);
+
+        for (int p = this.rowPointer[row]; p < this.rowPointer[row + 1]; p++) {
+            x[xOffset + this.columns[p]] = this.values[p];
+        }
+
+        System.arraycopy(this.objectives, row * this.outputSize, y, yOffset, this.outputSize);
+    }
+
+    //non zeros over all the rows
+    public int getNonZeros() {
+        return this.values.length;
+    }
+
+    //copies rows consecutive rows into the sparse buffers of ws and their objectives into ws.target, every value is scaled by the normalizer
+    void read(int first, int rows, NNWorkspace ws, NNNormalizer normalizer) {
+        int nonZeros = this.rowPointer[first + rows] - this.rowPointer[first];
+        ws.ensureSparse(nonZeros);
+        int n = 0;
+
+        for (int r = 0; r < rows; r++) {
+            ws.sparseRows[r] = n;
+
+            for (int p = this.rowPointer[first + r]; p < this.rowPointer[first + r + 1]; p++) {
+                ws.sparseColumns[n] = this.columns[p];
+                ws.sparseValues[n++] = normalizer.apply(this.columns[p], this.values[p]);
+            }
+        }
+
+        ws.sparseRows[rows] = n;
+        System.arraycopy(this.objectives, first * this.outputSize, ws.target, 0, rows * this.outputSize);
+    }
+
+    //statistics over the non zeros plus the implicit zeros of each column, without densifying any row
+    NNStatistics statistics() {
+        int rows = this.size();
+        double[] min = new double[this.inputSize];
+        double[] max = new double[this.inputSize];
+        double[] sum = new double[this.inputSize];
+        double[] mean = new double[this.inputSize];
+        double[] variance = new double[this.inputSize];
+        long[] nonZeros = new long[this.inputSize];
+
+        for (int p = 0; p < this.values.length; p++) {
+            int j = this.columns[p];
+            min[j] = Math.min(min[j], this.values[p]);
+            max[j] = Math.max(max[j], this.values[p]);
+            sum[j] += this.values[p];
+            nonZeros[j]++;
+        }
+
+        for (int j = 0; j < this.inputSize; j++) {
+            mean[j] = sum[j] / rows;
+
+            if (nonZeros[j] == rows) { //no implicit zero, the bounds come from the values alone
+                min[j] = Double.POSITIVE_INFINITY;
+                max[j] = Double.NEGATIVE_INFINITY;
+            }
+
+            variance[j] = (rows - nonZeros[j]) * mean[j] * mean[j]; //the zeros
+        }
+
+        for (int p = 0; p < this.values.length; p++) {
+            int j = this.columns[p];
+            double d = this.values[p] - mean[j];
+            variance[j] += d * d;
+
+            if (nonZeros[j] == rows) {
+                min[j] = Math.min(min[j], this.values[p]);
+                max[j] = Math.max(max[j], this.values[p]);
+            }
+        }
+
+        for (int j = 0; j < this.inputSize; j++) {
+            variance[j] /= rows;
+        }
+
+        return new NNStatistics(rows, min, max, mean, variance);
+    }
+}
@@ -0,0 +1,129 @@
+package ml;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+//per-feature count, min, max, mean and variance (Welford), partial statistics of separate chunks can be merged
+public class NNStatistics {
+    private static final int CHUNK_ROWS = 4096; //rows summarized by each parallel task
+
+    private final double[] min;
+    private final double[] max;
+    private final double[] mean;
+    private final double[] m2; //sum of squared differences from the mean
+    private long count;
+
+    public NNStatistics(int features) {
+        this.min = new double[features];
+        this.max = new double[features];
+        this.mean = new double[features];
+        this.m2 = new double[features];
+        Arrays.fill(this.min, Double.POSITIVE_INFINITY);
+        Arrays.fill(this.max, Double.NEGATIVE_INFINITY);
+    }
+
+    public NNStatistics(long count, double[] min, double[] max, double[] mean, double[] variance) {
+        this(min.length);
+        this.count = count;
+        System.arraycopy(min, 0, this.min, 0, min.length);
+        System.arraycopy(max, 0, this.max, 0, max.length);
+        System.arraycopy(mean, 0, this.mean, 0, mean.length);
+
+        for (int j = 0; j < variance.length; j++) {
+            this.m2[j] = variance[j] * count;
+        }
+    }
+
+    //one parallel pass over the inputs of the dataset, binary datasets already carry their statistics and sparse ones only visit their non zeros
+    public static NNStatistics of(NNDataset set) {
+        if (set instanceof NNBinaryDataset) {
+            NNBinaryDataset b = (NNBinaryDataset) set;
+            return new NNStatistics(b.size(), b.getMin(), b.getMax(), b.getMean(), b.getVariance());
+        }
+
+        if (set instanceof NNSparseDataset) {
+            return ((NNSparseDataset) set).statistics();
+        }
+
+        int chunks = (set.size() + CHUNK_ROWS - 1) / CHUNK_ROWS;
+
+        return IntStream.range(0, chunks).parallel().mapToObj(c -> {
+            NNStatistics s = new NNStatistics(set.getInputSize());
+            double[] x = new double[set.getInputSize()];
+            double[] y = new double[set.getOutputSize()];
+
+            for (int i = c * CHUNK_ROWS; i < Math.min((c + 1) * CHUNK_ROWS, set.size()); i++) {
+                set.read(i, x, 0, y, 0);
+                s.add(x, 0);
+            }
+
+            return s;
+        }).reduce(NNStatistics::merge).orElseGet(() -> new NNStatistics(set.getInputSize())); //ordered reduction, the result does not depend on scheduling
+    }
+
+    public void add(double[] x, int offset) {
+        this.count++;
+
+        for (int j = 0; j < this.mean.length; j++) {
+            double v = x[offset + j];
+            double delta = v - this.mean[j];
+            this.mean[j] += delta / this.count;
+            this.m2[j] += delta * (v - this.mean[j]);
+            this.min[j] = Math.min(this.min[j], v);
+            this.max[j] = Math.max(this.max[j], v);
+        }
+    }
+
+    //adds rows consecutive samples of a row-major chunk
+    public void add(double[] chunk, int offset, int rows) {
+        for (int r = 0; r < rows; r++) {
+            this.add(chunk, offset + r * this.mean.length);
+        }
+    }
+
+    //combines this with the statistics of another chunk and returns this
+    public NNStatistics merge(NNStatistics s) {
+        if (s.count == 0) {
+            return this;
+        }
+
+        long total = this.count + s.count;
+
+        for (int j = 0; j < this.mean.length; j++) {
+            double delta = s.mean[j] - this.mean[j];
+            this.mean[j] += delta * s.count / total;
+            this.m2[j] += s.m2[j] + delta * delta * ((double) this.count * s.count / total);
+            this.min[j] = Math.min(this.min[j], s.min[j]);
+            this.max[j] = Math.max(this.max[j], s.max[j]);
+        }
+
+        this.count = total;
+        return this;
+    }
+
+    public long getCount() {
+        return this.count;
+    }
+
+    public double[] getMin() {
+        return this.min.clone();
+    }
+
+    public double[] getMax() {
+        return this.max.clone();
+    }
+
+    public double[] getMean() {
+        return this.mean.clone();
+    }
+
+    public double[] getVariance() {
+        double[] variance = new double[this.m2.length];
+
+        for (int j = 0; j < variance.length; j++) {
+            variance[j] = this.count == 0 ? 0 : this.m2[j] / this.count;
+        }
+
+        return variance;
+    }
+}
@@ -0,0 +1,6 @@
+package ml;
+
+//receives the metrics of every epoch, called by one training thread while the others wait at the end of the epoch
+public interface NNTrainingListener {
+    void epochCompleted(NNEpochMetrics metrics);
+}
@@ -0,0 +1,6 @@
+package ml;
+
+public enum NNTrainingMode {
+    SYNCHRONOUS,
+    HOGWILD
+}
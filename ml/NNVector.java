@@ -0,0 +1,111 @@
+package ml;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//Vector API versions of the innermost loops of NNMatrix, NNLayerKernel and NNOptimizerState, in the widest vectors of the processor
+//every operation here rounds exactly like its scalar loop in every tier of the JIT, the lanewise EXP and TANH do not and sigmoid and tanh stay scalar
+//only loaded when the JVM resolved jdk.incubator.vector (--add-modules jdk.incubator.vector), see NNKernels.VECTOR, the scalar loops stay the fallback
+//the JIT never vectorizes the additions of a dot product on its own because it must keep their order, here every lane keeps its own partial sums
+final class NNVector {
+    private static final VectorSpecies<Double> D = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Float> F = FloatVector.SPECIES_PREFERRED;
+
+    private NNVector() {}
+
+    //sum of a[aOff + i] * b[bOff + i] for i < n
+    static double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+        DoubleVector s0 = DoubleVector.zero(D);
+        DoubleVector s1 = DoubleVector.zero(D);
+        int i = 0;
+
+        for (int bound = n - 2 * D.length(); i <= bound; i += 2 * D.length()) { //two accumulators hide the latency of the fused multiply-adds
+            s0 = DoubleVector.fromArray(D, a, aOff + i).fma(DoubleVector.fromArray(D, b, bOff + i), s0);
+            s1 = DoubleVector.fromArray(D, a, aOff + i + D.length()).fma(DoubleVector.fromArray(D, b, bOff + i + D.length()), s1);
+        }
+
+        for (int bound = n - D.length(); i <= bound; i += D.length()) {
+            s0 = DoubleVector.fromArray(D, a, aOff + i).fma(DoubleVector.fromArray(D, b, bOff + i), s0);
+        }
+
+        DoubleVector sum = s0.add(s1);
+        double s = 0;
+
+        for (int l = 0; l < D.length(); l++) { //reduceLanes leaves the order of the additions to the JIT, interpreted and compiled code would round differently and checkpoints would not resume bit for bit
+            s += sum.lane(l);
+        }
+
+        for (; i < n; i++) {
+            s += a[aOff + i] * b[bOff + i];
+        }
+
+        return s;
+    }
+
+    //y[yOff + i] += a * x[xOff + i] for i < n
+    static void axpy(double a, double[] x, int xOff, double[] y, int yOff, int n) {
+        DoubleVector va = DoubleVector.broadcast(D, a);
+        int i = 0;
+
+        for (int bound = D.loopBound(n); i < bound; i += D.length()) {
+            DoubleVector.fromArray(D, x, xOff + i).fma(va, DoubleVector.fromArray(D, y, yOff + i)).intoArray(y, yOff + i);
+        }
+
+        for (; i < n; i++) {
+            y[yOff + i] += a * x[xOff + i];
+        }
+    }
+
+    static void axpy(float a, float[] x, float[] y, int n) {
+        FloatVector va = FloatVector.broadcast(F, a);
+        int i = 0;
+
+        for (int bound = F.loopBound(n); i < bound; i += F.length()) {
+            FloatVector.fromArray(F, x, i).fma(va, FloatVector.fromArray(F, y, i)).intoArray(y, i);
+        }
+
+        for (; i < n; i++) {
+            y[i] += a * x[i];
+        }
+    }
+
+    //values[i] = values[i] > 0 ? values[i] : 0 over [from, to), a NaN becomes 0 like in the scalar loop, which max would not do
+    static void relu(double[] values, int from, int to) {
+        DoubleVector zero = DoubleVector.zero(D);
+        int i = from;
+
+        for (int bound = to - D.length(); i <= bound; i += D.length()) {
+            DoubleVector x = DoubleVector.fromArray(D, values, i);
+            zero.blend(x, x.compare(VectorOperators.GT, 0)).intoArray(values, i);
+        }
+
+        for (; i < to; i++) {
+            values[i] = values[i] > 0 ? values[i] : 0;
+        }
+    }
+
+    //same update as NNOptimizerState.adam, the square root and the division are done a vector at a time
+    static void adam(double[] w, double[] g, double[] m, double[] v, double rate, double scale, double beta1, double beta2, double epsilon) {
+        int i = 0;
+
+        for (int bound = D.loopBound(w.length); i < bound; i += D.length()) {
+            DoubleVector gi = DoubleVector.fromArray(D, g, i).mul(scale);
+            DoubleVector mi = DoubleVector.fromArray(D, m, i).mul(beta1).add(gi.mul(1 - beta1));
+            DoubleVector vi = DoubleVector.fromArray(D, v, i).mul(beta2).add(gi.mul(1 - beta2).mul(gi));
+            mi.intoArray(m, i);
+            vi.intoArray(v, i);
+            DoubleVector.fromArray(D, w, i).sub(mi.mul(rate).div(vi.sqrt().add(epsilon))).intoArray(w, i);
+        }
+
+        for (; i < w.length; i++) {
+            double gi = g[i] * scale;
+            double mi = beta1 * m[i] + (1 - beta1) * gi;
+            double vi = beta2 * v[i] + (1 - beta2) * gi * gi;
+            m[i] = mi;
+            v[i] = vi;
+            w[i] -= rate * mi / (Math.sqrt(vi) + epsilon);
+        }
+    }
+}
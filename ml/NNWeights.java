@@ -0,0 +1,184 @@
+package ml;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class NNWeights {
+    private final int inputSize;
+    private final int[] layerSize;
+    private final int[] weightOffset; //index of the first synapse of each layer
+    private final int[] biasOffset; //index of the first neuron of each layer
+    private final double[] weights; //row-major, neuron n of layer l starts at weightOffset[l] + n * fanIn(l)
+    private final double[] bias;
+    private final AtomicLong version = new AtomicLong(); //bumped after every change of the parameters, see NNPredictionCache, atomically as HOGWILD workers bump it concurrently
+
+    public NNWeights(int inputSize, int[] layerSize) {
+        this.inputSize = inputSize;
+        this.layerSize = layerSize.clone();
+        this.weightOffset = new int[layerSize.length + 1];
+        this.biasOffset = new int[layerSize.length + 1];
+
+        for (int l = 0; l < layerSize.length; l++) {
+            int prevLayerSize = l == 0 ? inputSize : layerSize[l - 1];
+            this.weightOffset[l + 1] = this.weightOffset[l] + layerSize[l] * prevLayerSize;
+            this.biasOffset[l + 1] = this.biasOffset[l] + layerSize[l];
+        }
+
+        this.weights = new double[this.weightOffset[layerSize.length]];
+        this.bias = new double[this.biasOffset[layerSize.length]];
+    }
+
+    public NNWeights(NNWeights w) {
+        this(w, w.weights.clone(), w.bias.clone());
+    }
+
+    private NNWeights(NNWeights w, double[] weights, double[] bias) {
+        this.inputSize = w.inputSize;
+        this.layerSize = w.layerSize;
+        this.weightOffset = w.weightOffset;
+        this.biasOffset = w.biasOffset;
+        this.weights = weights;
+        this.bias = bias;
+    }
+
+    //same layout without any parameter, for models that keep their parameters in another format
+    NNWeights topology() {
+        return new NNWeights(this, new double[0], new double[0]);
+    }
+
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    public int getLayers() {
+        return this.layerSize.length;
+    }
+
+    public int getLayerSize(int l) {
+        return this.layerSize[l];
+    }
+
+    public int[] getLayerSizes() {
+        return this.layerSize.clone();
+    }
+
+    public int getOutputSize() {
+        return this.layerSize[this.layerSize.length - 1];
+    }
+
+    public int getFanIn(int l) {
+        return l == 0 ? this.inputSize : this.layerSize[l - 1];
+    }
+
+    public int getWeightOffset(int l) {
+        return this.weightOffset[l];
+    }
+
+    public int getBiasOffset(int l) {
+        return this.biasOffset[l];
+    }
+
+    public double[] getWeights() {
+        return this.weights;
+    }
+
+    public double[] getBias() {
+        return this.bias;
+    }
+
+    public double getWeight(int l, int n, int i) {
+        return this.weights[this.weightOffset[l] + n * this.getFanIn(l) + i];
+    }
+
+    public double getBias(int l, int n) {
+        return this.bias[this.biasOffset[l] + n];
+    }
+
+    //changes written straight into getWeights() or getBias() have to be announced
+    public void markChanged() {
+        this.version.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return this.version.get();
+    }
+
+    public void copyFrom(NNWeights w) {
+        System.arraycopy(w.weights, 0, this.weights, 0, this.weights.length);
+        System.arraycopy(w.bias, 0, this.bias, 0, this.bias.length);
+        this.markChanged();
+    }
+
+    public void clear() {
+        Arrays.fill(this.weights, 0);
+        Arrays.fill(this.bias, 0);
+        this.markChanged();
+    }
+
+    public void add(NNWeights w, double factor) {
+        for (int i = 0; i < this.weights.length; i++) {
+            this.weights[i] += w.weights[i] * factor;
+        }
+
+        for (int i = 0; i < this.bias.length; i++) {
+            this.bias[i] += w.bias[i] * factor;
+        }
+
+        this.markChanged();
+    }
+
+    public void scale(double factor) {
+        for (int i = 0; i < this.weights.length; i++) {
+            this.weights[i] *= factor;
+        }
+
+        for (int i = 0; i < this.bias.length; i++) {
+            this.bias[i] *= factor;
+        }
+
+        this.markChanged();
+    }
+
+    public boolean isFinite() {
+        for (double d: this.weights) {
+            if (!Double.isFinite(d)) {
+                return false;
+            }
+        }
+
+        for (double d: this.bias) {
+            if (!Double.isFinite(d)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    //jagged views for callers written against double[][][] weights and double[][] bias
+    public double[][][] toWeightsArray() {
+        double[][][] w = new double[this.layerSize.length][][];
+
+        for (int l = 0; l < w.length; l++) {
+            int fanIn = this.getFanIn(l);
+            w[l] = new double[this.layerSize[l]][fanIn];
+
+            for (int n = 0; n < w[l].length; n++) {
+                System.arraycopy(this.weights, this.weightOffset[l] + n * fanIn, w[l][n], 0, fanIn);
+            }
+        }
+
+        return w;
+    }
+
+    public double[][] toBiasArray() {
+        double[][] b = new double[this.layerSize.length][];
+
+        for (int l = 0; l < b.length; l++) {
+            b[l] = new double[this.layerSize[l]];
+            System.arraycopy(this.bias, this.biasOffset[l], b[l], 0, b[l].length);
+        }
+
+        return b;
+    }
+}
@@ -0,0 +1,79 @@
+package ml;
+
+//per-thread scratch buffers for the forward and backward passes of a mini-batch, allocated once and reused for every batch
+//prediction workspaces skip the backward buffers, single precision ones only hold the float buffers and int8 ones the flat float and byte buffers
+class NNWorkspace {
+    final int capacity; //maximum number of rows per batch
+    final double[] input; //batch inputs, row-major
+    final double[] target; //batch objectives, row-major
+    final double[][] values; //neurons activation, one row per sample
+    final double[][] deltas; //error derivatives with respect to the nets
+    final NNWeights gradient; //accumulated weight and bias gradients
+    final float[][] inputF; //single precision buffers keep one array per row, see NNMatrix.multiply(float[][], ...)
+    final float[][][] valuesF;
+    final float[] rowF;
+    final float[] inputQ; //int8 buffers, row-major: inputs and activations stay in single precision between layers
+    final float[][] valuesQ;
+    final int[][] quantized; //input of the current layer quantized to int8, held in ints like the sums
+    final int[][] accumulator;
+    final int[] rowQ;
+    int[] sparseRows; //input batch in compressed sparse rows instead of input, see NNSparseDataset
+    int[] sparseColumns;
+    double[] sparseValues;
+    long[] forwardNanos; //time spent in each layer, only allocated while training is instrumented
+    long[] backwardNanos;
+
+    NNWorkspace(NNWeights weights, int capacity, boolean training) {
+        this(weights, capacity, training, NNPrecision.DOUBLE);
+    }
+
+    NNWorkspace(NNWeights weights, int capacity, boolean training, NNPrecision precision) {
+        this(weights, capacity, training, precision, false);
+    }
+
+    //sparse workspaces take their input batches in the sparse buffers and have no dense input
+    NNWorkspace(NNWeights weights, int capacity, boolean training, NNPrecision precision, boolean sparse) {
+        int layers = weights.getLayers();
+        boolean single = precision == NNPrecision.FLOAT;
+        boolean int8 = precision == NNPrecision.INT8;
+        this.capacity = capacity;
+        this.input = single || int8 || sparse ? null : new double[capacity * weights.getInputSize()];
+        this.target = training ? new double[capacity * weights.getOutputSize()] : null;
+        this.values = new double[layers][];
+        this.deltas = new double[layers][];
+        this.gradient = training ? new NNWeights(weights.getInputSize(), weights.getLayerSizes()) : null;
+        this.inputF = single ? new float[capacity][weights.getInputSize()] : null;
+        this.valuesF = new float[layers][][];
+        this.inputQ = int8 ? new float[capacity * weights.getInputSize()] : null;
+        this.valuesQ = new float[layers][];
+        int widest = 0;
+        int widestFanIn = 0;
+
+        for (int l = 0; l < layers; l++) {
+            this.values[l] = single || int8 ? null : new double[capacity * weights.getLayerSize(l)];
+            this.deltas[l] = training ? new double[capacity * weights.getLayerSize(l)] : null;
+            this.valuesF[l] = single ? new float[capacity][weights.getLayerSize(l)] : null;
+            this.valuesQ[l] = int8 ? new float[capacity * weights.getLayerSize(l)] : null;
+            widest = Math.max(widest, weights.getLayerSize(l));
+            widestFanIn = Math.max(widestFanIn, weights.getFanIn(l));
+        }
+
+        this.rowF = single ? new float[widest] : null;
+        this.quantized = int8 ? new int[capacity][widestFanIn] : null;
+        this.accumulator = int8 ? new int[capacity][widest] : null;
+        this.rowQ = int8 ? new int[widest] : null;
+        this.sparseRows = sparse ? new int[capacity + 1] : null;
+    }
+
+    //makes room for a sparse batch of nonZeros values, the buffers only grow
+    void ensureSparse(int nonZeros) {
+        if (this.sparseRows == null) {
+            this.sparseRows = new int[this.capacity + 1];
+        }
+
+        if (this.sparseValues == null || this.sparseValues.length < nonZeros) {
+            this.sparseColumns = new int[Math.max(nonZeros, 2 * (this.sparseValues == null ? 0 : this.sparseValues.length))];
+            this.sparseValues = new double[this.sparseColumns.length];
+        }
+    }
+}
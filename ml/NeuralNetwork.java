@@ -3,223 +3,1034 @@ package ml;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import jdk.jfr.EventType;
 
 @SuppressWarnings("ALL")
 public class NeuralNetwork extends SupervisedNetwork {
+    private static final int MODEL_MAGIC = 0x4E4E4D44; //"NNMD"
+    private static final int MODEL_VERSION = 2;
+    private static final int MAX_ROLLBACKS = 3; //divergences tolerated by one training run, the learning rate is halved after each
+    private static final int CALIBRATION_ROWS = 1024; //training rows sampled to calibrate int8 models
     private final NNActivation[] activations;
+    private final NNPlan plan;
     private final NNError error;
+    private final int batchSize;
+    private final int threads;
+    private final NNTrainingMode trainingMode;
+    final InferenceModel model; //live view over this.weights
+    private final NNDataset trainingSet;
+    private final NNDataSource source; //streamed training set, trainingSet is null when set
+    private final NNSparseDataset sparse; //trainingSet when it is sparse, its first layer only multiplies the non zeros
+    private final int shuffleBuffer;
+    private final long shuffleSeed;
+    private NNPrefetcher prefetcher; //of the running streamed training
+    private volatile boolean streamEnded; //every synchronous worker received the END of the epoch
+    private long samplesSeen;
+    private double lastLoss; //running loss of the last streamed epoch
+    private final NNOptimizerState optimizer;
+    private final double validationSplit;
+    private final int validationInterval;
+    private final int patience;
+    private final NNSchedule schedule;
+    private final int scheduleStep;
+    private final double scheduleFactor;
+    private volatile double rate; //learning rate of the current epoch
+    private volatile boolean stopped; //set by the end of epoch check, workers leave after the current epoch
+    private int epochsRun;
+    private double bestLoss;
+    private int sinceBest; //evaluations since the best loss
+    private int sinceDecay; //evaluations since the best loss or the last plateau decay
+    private NNWeights best; //weights at the best loss
+    private final List<NNTrainingListener> listeners = new ArrayList<>();
+    private boolean instrumented; //metrics are only gathered while a listener or the jfr events are enabled
+    private long epochStart;
+    private double[] gradientNormSq; //squared gradient norms per layer of the synchronous updates
+    private int updates;
+    private final String checkpointFile;
+    private final int checkpointInterval;
+    private NNCheckpoint lastGood; //in memory copy of the last checkpoint, training rolls back to it on NaN
+    private ExecutorService checkpointWriter;
+    private Future<?> pendingWrite;
+    private volatile boolean diverged; //a worker met a NaN, every worker skips the rest of the epoch
+    private Random random;
+    private final NNNormalizer normalizer; //applied to every row while assembling batches, the data itself is never modified
+    private final NNCluster cluster;
+    private NNRing ring; //of the running distributed training
+    private double[] exchange; //gradient, rows and divergence flag all-reduced after every synchronous step
+    private IOException clusterFailure;
 
     public NeuralNetwork(double[][] data, double[][] objectives, NNParameters p) {
+        this(new NNArrayDataset(data, objectives), p);
         this.data = data;
         this.objectives = objectives;
-        this.weights = new double[p.getLayerSize().length][][];
-        this.bias = new double[p.getLayerSize().length][];
+    }
+
+    //trains on any dataset without copying it
+    public NeuralNetwork(NNDataset trainingSet, NNParameters p) {
+        this(trainingSet, null, p, fit(trainingSet, p.getNormalization()));
+    }
+
+    //shares a normalizer already fitted on trainingSet, e.g. between the candidates of a search
+    NeuralNetwork(NNDataset trainingSet, NNParameters p, NNNormalizer normalizer) {
+        this(trainingSet, null, p, normalizer);
+    }
+
+    //streams the training set every epoch instead of reading it at random, the normalization statistics cost one extra pass
+    public NeuralNetwork(NNDataSource source, NNParameters p) throws IOException {
+        this(null, source, p, fit(source, p.getNormalization()));
+
+        if (p.getValidationSplit() > 0) {
+            throw new IllegalArgumentException("A streamed training set cannot be split, monitor the training loss instead");
+        }
+    }
+
+    private NeuralNetwork(NNDataset trainingSet, NNDataSource source, NNParameters p, NNNormalizer normalizer) {
+        int inputSize = trainingSet != null ? trainingSet.getInputSize() : source != null ? source.getInputSize() : p.getInputSize();
+        int outputSize = trainingSet != null ? trainingSet.getOutputSize() : source != null ? source.getOutputSize() : p.getLayerSize()[p.getLayerSize().length - 1];
+
+        if (inputSize != p.getInputSize() || outputSize != p.getLayerSize()[p.getLayerSize().length - 1]) {
+            throw new IllegalArgumentException("The dataset does not match the input size and the output layer");
+        }
+
+        if (p.getCluster() != null && (source != null || p.getTrainingMode() == NNTrainingMode.HOGWILD)) {
+            throw new IllegalArgumentException("Distributed training needs a dataset and synchronous training");
+        }
+
+        this.trainingSet = trainingSet;
+        this.source = source;
+        this.sparse = trainingSet instanceof NNSparseDataset ? (NNSparseDataset) trainingSet : null;
+        this.cluster = p.getCluster();
+        this.shuffleBuffer = p.getShuffleBuffer();
+        this.weights = new NNWeights(p.getInputSize(), p.getLayerSize());
         this.alpha = p.getAlpha();
         this.epochs = p.getEpochs();
         this.rescaled = false;
         this.rescalingLog = 0;
         this.activations = p.getActivations();
+        this.plan = new NNPlan(this.activations);
         this.error = p.getError();
+        this.batchSize = p.getBatchSize();
+        this.threads = p.getThreads();
+        this.trainingMode = p.getTrainingMode();
+        this.validationSplit = p.getValidationSplit();
+        this.validationInterval = p.getValidationInterval();
+        this.patience = p.getPatience();
+        this.schedule = p.getSchedule();
+        this.scheduleStep = p.getScheduleStep();
+        this.scheduleFactor = p.getScheduleFactor();
+        this.checkpointFile = p.getCheckpoint();
+        this.checkpointInterval = p.getCheckpointInterval();
+        this.random = p.getSeed() == null ? new Random() : new Random(p.getSeed());
+        this.optimizer = new NNOptimizerState(this.weights, p.getOptimizer(), p.getBeta1(), p.getBeta2(), p.getEpsilon());
+        this.normalizer = normalizer;
+        this.model = new InferenceModel(this.weights, this.activations, normalizer);
 
         //initialize neurons and synapses
-        for (int i = 0; i < p.getLayerSize().length; i++) {
-            int prevLayerSize = i == 0 ? p.getInputSize() : p.getLayerSize()[i - 1];
-            this.weights[i] = new double[p.getLayerSize()[i]][prevLayerSize];
-            this.bias[i] = new double[p.getLayerSize()[i]];
-
-            for (int j = 0; j < this.weights[i].length; j++) {
-                for (int k = 0; k < this.weights[i][j].length; k++) {
-                    this.weights[i][j][k] = Math.random() * 2 - 1; //ranging from -1 to 1
-                }
-            }
+        double[] w = this.weights.getWeights();
+        double[] b = this.weights.getBias();
 
-            for (int j = 0; j < this.bias[i].length; j++) {
-                this.bias[i][j] = Math.random() * 2 - 1; //ranging from -1 to 1
-            }
+        for (int i = 0; i < w.length; i++) {
+            w[i] = this.random.nextDouble() * 2 - 1; //ranging from -1 to 1
+        }
+
+        for (int i = 0; i < b.length; i++) {
+            b[i] = this.random.nextDouble() * 2 - 1; //ranging from -1 to 1
         }
 
+        this.shuffleSeed = this.random.nextLong();
+
         /*if (p.getAutomaticRescaling()) {
             this.checkMagnitude();
         }*/
+    }
 
-        super.minMaxNorm();
+    //the statistics are gathered in one parallel pass, binary datasets already carry them in their header
+    //sparse datasets are only scaled, shifting them would turn every zero into a non zero
+    static NNNormalizer fit(NNDataset set, NNNormalization normalization) {
+        if (normalization == NNNormalization.NONE) {
+            return NNNormalizer.identity(set.getInputSize());
+        }
+
+        if (set instanceof NNSparseDataset) {
+            return NNNormalizer.fitUncentered(normalization, NNStatistics.of(set));
+        }
+
+        return NNNormalizer.fit(normalization, NNStatistics.of(set));
+    }
+
+    private static NNNormalizer fit(NNDataSource source, NNNormalization normalization) throws IOException {
+        if (normalization == NNNormalization.NONE) {
+            return NNNormalizer.identity(source.getInputSize());
+        }
+
+        NNStatistics statistics = new NNStatistics(source.getInputSize());
+        double[] x = new double[source.getInputSize()];
+        double[] y = new double[source.getOutputSize()];
+        source.reset();
+
+        while (source.next(x, 0, y, 0)) {
+            statistics.add(x, 0);
+        }
+
+        return NNNormalizer.fit(normalization, statistics);
     }
 
+    //worker training on its own shard of data
+    //synchronous workers reduce their gradients at the barrier after every step, hogwild workers (no barrier) update the shared weights without locking
+    //every worker waits at the epoch barrier at the end of each epoch, whose action evaluates the network and adjusts the learning rate
+    //with a streamed training set the workers take their batches from the prefetcher until it hands them the END of the epoch
     class NNEpochsPerformer extends Thread {
-        private double weights[][][];
-        private double bias[][];
-        private final int outputLayerIndex;
-        private final int epochs;
+        private final NNWorkspace workspace;
+        private final int first;
+        private final int last;
+        private final int steps;
+        private final int firstEpoch;
+        private final NNBarrier barrier;
+        private final NNBarrier epochBarrier;
+        private int rows; //rows processed in the current step
+        private boolean ended; //received the END of the streamed epoch
+        private long busyNanos; //instrumentation, reset after every epoch
+        private double loss;
+        private int samples;
+        private final double[] gradientNormSq; //hogwild updates only
+        private int updates;
+        private long allocatedBytes;
 
-        public NNEpochsPerformer(double[][][] weights, double[][] bias, int epochs) {
-            this.weights = weights;
-            this.bias = bias;
-            this.outputLayerIndex = weights.length - 1;
-            this.epochs = epochs;
+        public NNEpochsPerformer(int first, int last, int steps, int firstEpoch, NNBarrier barrier, NNBarrier epochBarrier) {
+            this.workspace = new NNWorkspace(weights, trainingSet == null ? batchSize : Math.min(batchSize, trainingSet.size()), true, NNPrecision.DOUBLE, sparse != null);
+            this.first = first;
+            this.last = last;
+            this.steps = steps;
+            this.firstEpoch = firstEpoch;
+            this.barrier = barrier;
+            this.epochBarrier = epochBarrier;
+            this.gradientNormSq = instrumented ? new double[weights.getLayers()] : null;
+
+            if (instrumented) {
+                this.workspace.forwardNanos = new long[weights.getLayers()];
+                this.workspace.backwardNanos = new long[weights.getLayers()];
+            }
         }
 
         @Override
         public void run() {
-            for (int e = 0; e < this.epochs; e++) {
-                for (int k = 0; k < data.length; k++) {
-                    double[][] values = new double[this.weights.length][]; //neurons activation
-                    double[][] nets = new double[values.length][]; //neurons value (wx + b)
-                    double[][] xDerivatives = new double[values.length][]; //x derivatives for the backpropagation
-
-                    for (int l = 0; l < values.length; l++) { //for each layer
-                        values[l] = new double[this.weights[l].length];
-                        nets[l] = new double[this.weights[l].length];
+            try {
+                for (int e = this.firstEpoch; e < epochs && !stopped; e++) {
+                    this.ended = false;
 
-                        for (int i = 0; i < values[l].length; i++) { //for each neuron of layer l
-                            double[] input = l == 0 ? data[k] : values[l - 1];
+                    for (int s = 0; source != null || s < this.steps; s++) { //for each mini-batch
+                        this.step(s);
 
-                            for (int j = 0; j < this.weights[l][i].length; j++) { //for each weight of neuron i of layer l
-                                values[l][i] += this.weights[l][i][j] * input[j];
+                        if (this.barrier == null) {
+                            if (this.ended) {
+                                break;
                             }
+                        } else {
+                            this.barrier.await();
 
-                            values[l][i] += this.bias[l][i];
-                            nets[l][i] = values[l][i];
-                            values[l][i] = activation(activations[l], values[l][i]);
+                            if (streamEnded) {
+                                break;
+                            }
                         }
                     }
 
-                    for (int l = outputLayerIndex; l >= 0; l--) { //for each layer
-                        xDerivatives[l] = new double[l == 0 ? data[k].length : values[l - 1].length];
+                    this.epochBarrier.await();
+                }
+            } catch (InterruptedException | BrokenBarrierException e) {
+                System.out.println("NNEpochsPerformer stopped: " + e);
+            }
+        }
 
-                        for (int n = 0; n < this.weights[l].length; n++) { //for each neuron of layer l
-                            double dActivation = l == outputLayerIndex ? errorDerivative(error, objectives[k][n], values[outputLayerIndex][n]) : xDerivatives[l + 1][n];
-                            double dInput = activationDerivative(activations[l], values[l][n], nets[l][n]);
-                            double localDerivative = dActivation * dInput;
+        //loads mini-batch s of the shard, or the next prefetched one, and computes its gradient, which is applied right away when there is no barrier
+        void step(int s) throws InterruptedException {
+            long start = instrumented ? System.nanoTime() : 0;
+            int k = this.first + s * this.workspace.capacity;
 
-                            for (int i = 0; i < this.weights[l][n].length; i++) { //for each synapse of neuron n of layer l
-                                xDerivatives[l][i] += localDerivative * this.weights[l][n][i];
-                                double dWeight = l == 0 ? data[k][i] : values[l - 1][i];
-                                this.weights[l][n][i] -= alpha * localDerivative * dWeight;
-                                this.bias[l][n] -= alpha * localDerivative;
-                            }
-                        }
+            if (source != null) {
+                this.rows = this.ended ? 0 : this.takeBatch();
+                this.rows = diverged ? 0 : this.rows; //the batches are still consumed to reach the END
+            } else {
+                this.rows = diverged ? 0 : Math.max(0, Math.min(this.workspace.capacity, this.last - k));
+            }
+
+            if (this.rows > 0) {
+                try {
+                    if (source == null) {
+                        loadBatch(this.workspace, k, this.rows);
                     }
+
+                    forward(weights, this.workspace, this.rows);
+
+                    if (instrumented || source != null) {
+                        this.loss += batchError(this.workspace, this.rows);
+                        this.samples += this.rows;
+                    }
+
+                    backward(weights, this.workspace, this.rows);
+                } catch (ArithmeticException nan) { //the workers keep meeting at the barriers without computing until the end of the epoch
+                    System.out.println(nan.getMessage());
+                    diverged = true;
+                    this.rows = 0;
+                }
+            }
+
+            if (this.rows == 0) {
+                this.workspace.gradient.clear(); //shard exhausted, nothing to contribute to this step
+            }
+
+            if (this.barrier == null && this.rows > 0) {
+                update(weights, this.workspace.gradient, this.rows, this.gradientNormSq);
+                this.updates++;
+            }
+
+            if (instrumented) {
+                this.busyNanos += System.nanoTime() - start;
+            }
+        }
+
+        int getSteps() {
+            return this.steps;
+        }
+
+        //copies the next prefetched batch into the workspace, 0 rows at the END of the epoch
+        private int takeBatch() throws InterruptedException {
+            NNPrefetcher.Batch b = prefetcher.take();
+
+            if (b == NNPrefetcher.END) {
+                this.ended = true;
+                return 0;
+            }
+
+            int rows = b.rows;
+            System.arraycopy(b.input, 0, this.workspace.input, 0, rows * weights.getInputSize());
+            System.arraycopy(b.target, 0, this.workspace.target, 0, rows * weights.getOutputSize());
+            prefetcher.release(b);
+            return rows;
+        }
+    }
+
+    //sums the gradients of the workers always in the same order, so the result does not depend on thread scheduling
+    //in a cluster the sum is then all-reduced with the other processes, which all apply the same update and keep identical weights
+    private void reduce(NNEpochsPerformer[] ep, NNWeights gradient) {
+        int rows = 0;
+        boolean ended = true;
+        gradient.clear();
+
+        for (NNEpochsPerformer p: ep) {
+            gradient.add(p.workspace.gradient, 1);
+            rows += p.rows;
+            ended &= p.ended;
+        }
+
+        this.streamEnded = ended;
+
+        if (this.ring != null && this.ring.getSize() > 1) {
+            if (this.clusterFailure != null) {
+                return;
+            }
+
+            double[] gw = gradient.getWeights();
+            double[] gb = gradient.getBias();
+            System.arraycopy(gw, 0, this.exchange, 0, gw.length);
+            System.arraycopy(gb, 0, this.exchange, gw.length, gb.length);
+            this.exchange[gw.length + gb.length] = rows;
+            this.exchange[gw.length + gb.length + 1] = this.diverged ? 1 : 0; //a NaN on any process rolls back all of them
+
+            try {
+                this.ring.allReduce(this.exchange);
+            } catch (IOException e) {
+                this.clusterFailure = e;
+                this.stopped = true;
+                return;
+            }
+
+            System.arraycopy(this.exchange, 0, gw, 0, gw.length);
+            System.arraycopy(this.exchange, gw.length, gb, 0, gb.length);
+            rows = (int) this.exchange[gw.length + gb.length];
+
+            if (this.exchange[gw.length + gb.length + 1] > 0) {
+                this.diverged = true;
+            }
+        }
+
+        if (rows > 0) {
+            this.update(this.weights, gradient, rows, this.gradientNormSq);
+            this.updates++;
+        }
+    }
+
+    //normSq, when not null, accumulates the squared norm of each layer's mean gradient
+    private void update(NNWeights weights, NNWeights gradient, int rows, double[] normSq) {
+        if (normSq != null) {
+            double[] gw = gradient.getWeights();
+            double[] gb = gradient.getBias();
+
+            for (int l = 0; l < normSq.length; l++) {
+                double sum = 0.00;
+
+                for (int i = gradient.getWeightOffset(l); i < gradient.getWeightOffset(l + 1); i++) {
+                    sum += gw[i] * gw[i];
+                }
+
+                for (int i = gradient.getBiasOffset(l); i < gradient.getBiasOffset(l + 1); i++) {
+                    sum += gb[i] * gb[i];
+                }
+
+                normSq[l] += sum / ((double) rows * rows);
+            }
+        }
+
+        this.optimizer.update(weights, gradient, rows, this.rate);
+    }
+
+    //runs between two epochs while every worker waits, epoch counts from 1
+    private void endOfEpoch(NNEpochsPerformer[] ep, int epoch, int trainingRows) {
+        this.streamEnded = false;
+
+        if (this.diverged || !this.weights.isFinite()) {
+            this.diverged = true;
+            this.stopped = true;
+            return;
+        }
+
+        long elapsed = System.nanoTime() - this.epochStart;
+        double rate = this.rate;
+        double validationLoss = Double.NaN;
+        this.epochsRun = epoch;
+
+        if (this.source != null) { //streamed epochs are only known once they are over
+            double loss = 0.00;
+            trainingRows = 0;
+
+            for (NNEpochsPerformer p: ep) {
+                loss += p.loss;
+                trainingRows += p.samples;
+            }
+
+            this.lastLoss = loss / Math.max(1, trainingRows);
+        }
+
+        this.samplesSeen += trainingRows;
+        boolean evaluate = (this.patience > 0 || this.validationSplit > 0 || this.schedule == NNSchedule.REDUCE_ON_PLATEAU) && epoch % this.validationInterval == 0;
+
+        if (evaluate) {
+            //the held out rows are monitored when there are any, the training rows otherwise (the running loss of a streamed epoch)
+            boolean validation = this.source == null && trainingRows < this.trainingSet.size();
+            double loss = this.source != null ? this.lastLoss : validation ? this.loss(trainingRows, this.trainingSet.size()) : this.loss(0, trainingRows);
+            System.out.println("Epoch " + epoch + ": " + (validation ? "validation" : "training") + " loss " + loss + ", learning rate " + this.rate);
+
+            if (validation) {
+                validationLoss = loss;
+            }
+
+            if (loss < this.bestLoss) {
+                this.bestLoss = loss;
+                this.sinceBest = 0;
+                this.sinceDecay = 0;
+
+                if (this.patience > 0) {
+                    this.best.copyFrom(this.weights);
+                }
+            } else {
+                this.sinceBest++;
+                this.sinceDecay++;
+            }
+
+            if (this.patience > 0 && this.sinceBest >= this.patience) {
+                System.out.println("Early stopping: no improvement in the last " + this.sinceBest + " evaluations");
+                this.stopped = true;
+            }
+
+            if (this.schedule == NNSchedule.REDUCE_ON_PLATEAU && this.sinceDecay >= this.scheduleStep) {
+                this.rate *= this.scheduleFactor;
+                this.sinceDecay = 0;
+            }
+        }
+
+        switch (this.schedule) {
+            case STEP -> this.rate = this.alpha * Math.pow(this.scheduleFactor, epoch / this.scheduleStep);
+            case COSINE -> this.rate = this.alpha * 0.5 * (1 + Math.cos(Math.PI * epoch / this.epochs));
+            default -> {}
+        }
+
+        if (this.instrumented) {
+            this.publish(ep, epoch, elapsed, trainingRows, validationLoss, rate);
+        }
+
+        for (NNEpochsPerformer p: ep) {
+            p.loss = 0;
+            p.samples = 0;
+        }
+
+        if (epoch % this.checkpointInterval == 0) {
+            this.checkpoint();
+        }
+
+        this.epochStart = System.nanoTime(); //the evaluation is not part of the next epoch
+    }
+
+    //gathers and resets the counters of the workers, then notifies the listeners and emits the jfr events
+    private void publish(NNEpochsPerformer[] ep, int epoch, long elapsed, int trainingRows, double validationLoss, double rate) {
+        int layers = this.weights.getLayers();
+        long[] forwardNanos = new long[layers];
+        long[] backwardNanos = new long[layers];
+        double[] gradientNorms = this.gradientNormSq.clone();
+        int updates = this.updates;
+        long busy = 0;
+        double loss = 0.00;
+        int samples = 0;
+        double allocationRate = Double.NaN;
+
+        for (NNEpochsPerformer p: ep) {
+            for (int l = 0; l < layers; l++) {
+                forwardNanos[l] += p.workspace.forwardNanos[l];
+                backwardNanos[l] += p.workspace.backwardNanos[l];
+                gradientNorms[l] += p.gradientNormSq[l];
+            }
+
+            updates += p.updates;
+            busy += p.busyNanos;
+            loss += p.loss;
+            samples += p.samples;
+            Arrays.fill(p.workspace.forwardNanos, 0);
+            Arrays.fill(p.workspace.backwardNanos, 0);
+            Arrays.fill(p.gradientNormSq, 0);
+            p.updates = 0;
+            p.busyNanos = 0;
+        }
+
+        Arrays.fill(this.gradientNormSq, 0);
+        this.updates = 0;
+
+        for (int l = 0; l < layers; l++) {
+            gradientNorms[l] = Math.sqrt(gradientNorms[l] / Math.max(1, updates));
+        }
+
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+            if (mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled()) {
+                long allocated = 0;
+
+                for (NNEpochsPerformer p: ep) {
+                    long total = mx.getThreadAllocatedBytes(p.getId());
+                    allocated += total - p.allocatedBytes;
+                    p.allocatedBytes = total;
                 }
+
+                allocationRate = allocated / (elapsed / 1e9);
+            }
+        }
+
+        NNEpochMetrics metrics = new NNEpochMetrics(epoch, loss / Math.max(1, samples), validationLoss, rate, trainingRows / (elapsed / 1e9), forwardNanos, backwardNanos, gradientNorms, (double) busy / ((double) elapsed * ep.length), allocationRate);
+
+        for (NNTrainingListener listener: this.listeners) {
+            listener.epochCompleted(metrics);
+        }
+
+        NNEpochEvent event = new NNEpochEvent();
+
+        if (event.shouldCommit()) {
+            event.epoch = epoch;
+            event.loss = metrics.getLoss();
+            event.validationLoss = validationLoss;
+            event.learningRate = rate;
+            event.samplesPerSecond = metrics.getSamplesPerSecond();
+            event.threadUtilization = metrics.getThreadUtilization();
+            event.allocationRate = allocationRate;
+            event.commit();
+        }
+
+        for (int l = 0; l < layers; l++) {
+            NNLayerEvent layerEvent = new NNLayerEvent();
+
+            if (layerEvent.shouldCommit()) {
+                layerEvent.epoch = epoch;
+                layerEvent.layer = l;
+                layerEvent.forwardTime = forwardNanos[l];
+                layerEvent.backwardTime = backwardNanos[l];
+                layerEvent.gradientNorm = gradientNorms[l];
+                layerEvent.commit();
             }
         }
+    }
+
+    public void addTrainingListener(NNTrainingListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeTrainingListener(NNTrainingListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    //mean error per output summed over the rows of a batch whose forward pass is in ws
+    private double batchError(NNWorkspace ws, int rows) {
+        int outputSize = this.weights.getOutputSize();
+        double[] y = ws.values[this.weights.getLayers() - 1];
+        double sum = 0.00;
+
+        for (int i = 0; i < rows * outputSize; i++) {
+            sum += this.error(this.error, ws.target[i], y[i]) / outputSize;
+        }
+
+        return sum;
+    }
 
-        public double[][][] getWeights() {
-            return this.weights;
+    private void loadBatch(NNWorkspace ws, int first, int rows) {
+        if (this.sparse != null) {
+            this.sparse.read(first, rows, ws, this.normalizer);
+            return;
         }
 
-        public double[][] getBias() {
-            return this.bias;
+        int inputSize = this.weights.getInputSize();
+        int outputSize = this.weights.getOutputSize();
+
+        for (int r = 0; r < rows; r++) {
+            this.trainingSet.read(first + r, ws.input, r * inputSize, ws.target, r * outputSize);
+            this.normalizer.apply(ws.input, r * inputSize, 1); //while the row is still in cache
+        }
+    }
+
+    //computes nets and activations of every layer for the first rows of ws.input, or of its sparse rows
+    private void forward(NNWeights weights, NNWorkspace ws, int rows) {
+        if (ws.sparseRows != null) {
+            NNKernels.forwardSparse(weights, this.plan, ws, rows);
+            return;
+        }
+
+        NNKernels.forward(weights, this.plan, ws, ws.input, 0, rows);
+    }
+
+    //backpropagates the error of the batch, overwriting ws.gradient with the gradients summed over the rows
+    private void backward(NNWeights weights, NNWorkspace ws, int rows) {
+        double[] w = weights.getWeights();
+        double[] gw = ws.gradient.getWeights();
+        double[] gb = ws.gradient.getBias();
+        int outputLayerIndex = weights.getLayers() - 1;
+        double[] deltas = ws.deltas[outputLayerIndex];
+        double[] values = ws.values[outputLayerIndex];
+        long start = ws.backwardNanos == null ? 0 : System.nanoTime();
+        ws.gradient.clear();
+
+        for (int i = 0; i < rows * weights.getOutputSize(); i++) {
+            deltas[i] = this.errorDerivative(this.error, ws.target[i], values[i]);
+        }
+
+        this.plan.layer(outputLayerIndex).multiplyDerivative(values, deltas, rows * weights.getOutputSize());
+
+        for (int l = outputLayerIndex; l >= 0; l--) { //for each layer
+            double[] input = l == 0 ? ws.input : ws.values[l - 1];
+            int size = weights.getLayerSize(l);
+            int fanIn = weights.getFanIn(l);
+            int bOffset = weights.getBiasOffset(l);
+            deltas = ws.deltas[l];
+
+            if (l == 0 && ws.sparseRows != null) {
+                NNMatrix.multiplyTransposedA(deltas, 0, ws.sparseRows, ws.sparseColumns, ws.sparseValues, gw, weights.getWeightOffset(l), size, fanIn, rows);
+            } else {
+                NNMatrix.multiplyTransposedA(deltas, 0, input, 0, gw, weights.getWeightOffset(l), size, fanIn, rows);
+            }
+
+            for (int r = 0; r < rows; r++) {
+                for (int n = 0; n < size; n++) {
+                    gb[bOffset + n] += deltas[r * size + n];
+                }
+            }
+
+            if (l > 0) {
+                double[] prevDeltas = ws.deltas[l - 1];
+                double[] prevValues = ws.values[l - 1];
+                Arrays.fill(prevDeltas, 0, rows * fanIn, 0);
+                NNMatrix.multiply(deltas, 0, w, weights.getWeightOffset(l), prevDeltas, 0, rows, fanIn, size);
+
+                this.plan.layer(l - 1).multiplyDerivative(prevValues, prevDeltas, rows * fanIn);
+            }
+
+            if (ws.backwardNanos != null) {
+                long now = System.nanoTime();
+                ws.backwardNanos[l] += now - start;
+                start = now;
+            }
         }
     }
 
     @Override
     public void train() {
-        final int nProcessors = Runtime.getRuntime().availableProcessors(); //use all virtual processors available
-        final int nThreads = this.epochs >= nProcessors ? nProcessors : 1;
-        System.out.println("Workload distributed on " + nThreads + " CPU(s)");
+        if (this.trainingSet == null && this.source == null) {
+            throw new IllegalStateException("The network has no training set");
+        }
+
+        this.rate = this.alpha;
+        this.epochsRun = 0;
+        this.bestLoss = Double.POSITIVE_INFINITY;
+        this.sinceBest = 0;
+        this.sinceDecay = 0;
+        this.best = this.patience > 0 ? new NNWeights(this.weights) : null;
+        this.run();
+    }
+
+    //continues a finished training up to a larger number of epochs, as if it had been started with them
+    void train(int epochs) {
+        if (this.trainingSet == null && this.source == null) {
+            throw new IllegalStateException("The network has no training set");
+        }
+
+        this.epochs = epochs;
+        this.run();
+    }
+
+    //a lone worker over the whole training set that applies its own updates, so that a step can be measured outside of train()
+    NNEpochsPerformer performer() {
+        if (this.trainingSet == null) {
+            throw new IllegalStateException("The network has no training set");
+        }
+
+        int capacity = Math.min(this.batchSize, this.trainingSet.size());
+        this.rate = this.alpha;
+        return new NNEpochsPerformer(0, this.trainingSet.size(), (this.trainingSet.size() + capacity - 1) / capacity, 0, null, null);
+    }
+
+    int getEpochsRun() {
+        return this.epochsRun;
+    }
+
+    //mean error per output over the held out rows
+    double validationLoss() {
+        int size = this.trainingSet.size() - (int) (this.trainingSet.size() * this.validationSplit);
+
+        if (size == this.trainingSet.size()) {
+            throw new IllegalStateException("The network has no validation rows");
+        }
 
-        NNEpochsPerformer[] ep = new NNEpochsPerformer[nThreads];
-        double[][][] learnedWeights = new double[this.weights.length][][];
-        double[][] learnedBias = new double[this.bias.length][];
+        return this.loss(size, this.trainingSet.size());
+    }
+
+    //continues the training saved in a checkpoint file, synchronous training with the same parameters and threads ends exactly as if it had never stopped
+    public void resume(String checkpoint) throws IOException {
+        if (this.trainingSet == null && this.source == null) {
+            throw new IllegalStateException("The network has no training set");
+        }
 
-        for (int i = 0; i < this.weights.length; i++) {
-            learnedWeights[i] = new double[this.weights[i].length][];
-            learnedBias[i] = new double[this.bias[i].length];
+        this.restore(NNCheckpoint.read(checkpoint));
+        System.out.println("Resuming from epoch " + this.epochsRun);
+        this.run();
+    }
+
+    //copies the training state, then hands it to the background writer so the workers never wait for the disk
+    private void checkpoint() {
+        NNWeights m = this.optimizer.getFirstMoment();
+        NNWeights v = this.optimizer.getSecondMoment();
+        this.lastGood = new NNCheckpoint(this.epochsRun, this.alpha, this.rate, this.bestLoss, this.sinceBest, this.sinceDecay, this.optimizer.getSteps(), NNCheckpoint.serialize(this.random), new NNWeights(this.weights), m == null ? null : new NNWeights(m), v == null ? null : new NNWeights(v), this.best == null ? null : new NNWeights(this.best));
 
-            for (int j = 0; j < this.weights[i].length; j++) {
-                learnedWeights[i][j] = new double[this.weights[i][j].length];
+        if (this.checkpointWriter != null) {
+            if (this.pendingWrite != null && !this.pendingWrite.isDone()) {
+                System.out.println("Checkpoint of epoch " + this.epochsRun + " skipped, the previous one is still being written");
+                return;
             }
+
+            NNCheckpoint c = this.lastGood;
+            this.pendingWrite = this.checkpointWriter.submit(() -> {
+                try {
+                    c.write(this.checkpointFile);
+                } catch (IOException e) {
+                    System.out.println("Checkpoint of epoch " + c.epoch + " failed: " + e);
+                }
+            });
+        }
+    }
+
+    private void restore(NNCheckpoint c) throws IOException {
+        NNWeights m = this.optimizer.getFirstMoment();
+        NNWeights v = this.optimizer.getSecondMoment();
+
+        if (!Arrays.equals(c.weights.getLayerSizes(), this.weights.getLayerSizes()) || c.weights.getInputSize() != this.weights.getInputSize() || (c.firstMoment == null) != (m == null) || (c.secondMoment == null) != (v == null)) {
+            throw new IOException("The checkpoint does not match the topology or the optimizer of this network");
         }
 
-        for (int i = 0; i < ep.length; i++) {
-            ep[i] = new NNEpochsPerformer(this.weights.clone(), this.bias.clone(), (int) Math.ceil(this.epochs / nThreads));
+        this.epochsRun = c.epoch;
+        this.alpha = c.alpha;
+        this.rate = c.rate;
+        this.bestLoss = c.bestLoss;
+        this.sinceBest = c.sinceBest;
+        this.sinceDecay = c.sinceDecay;
+        this.random = c.random();
+        this.weights.copyFrom(c.weights);
+        this.optimizer.setSteps(c.steps);
+
+        if (m != null) {
+            m.copyFrom(c.firstMoment);
+        }
+
+        if (v != null) {
+            v.copyFrom(c.secondMoment);
         }
 
+        this.best = this.patience > 0 ? new NNWeights(c.best == null ? c.weights : c.best) : null;
+    }
+
+    //trains from epoch epochsRun, rolling back to the last checkpoint whenever the weights diverge
+    //in a cluster every process runs this on the same training set and trains on its own slice of the rows, the shapes only depend on the size of the cluster so that every process takes the same number of steps
+    private void run() {
+        final int size = this.source != null ? 0 : this.trainingSet.size() - (int) (this.trainingSet.size() * this.validationSplit); //the validation rows are the last ones
+        final int processes = this.cluster == null ? 1 : this.cluster.getSize();
+        final int rank = this.cluster == null ? 0 : this.cluster.getRank();
+        final int processShard = (int) Math.ceil((double) size / processes);
+        final int first = Math.min(rank * processShard, size);
+        final int last = Math.min((rank + 1) * processShard, size);
+        final int nThreads = this.source != null ? this.threads : Math.min(this.threads, processShard);
+        final int shardSize = this.source != null ? 0 : (int) Math.ceil((double) processShard / nThreads);
+        final int steps = this.source != null ? 0 : (int) Math.ceil((double) shardSize / Math.min(this.batchSize, size));
+        System.out.println("Workload distributed on " + nThreads + " CPU(s) [" + this.trainingMode + "]");
+
+        if (this.cluster != null) {
+            this.connect(steps);
+            System.out.println("Rank " + rank + " of " + processes + ", training rows [" + first + ", " + last + ")");
+        }
+
+        this.instrumented = !this.listeners.isEmpty() || EventType.getEventType(NNEpochEvent.class).isEnabled() || EventType.getEventType(NNLayerEvent.class).isEnabled();
+        this.gradientNormSq = this.instrumented ? new double[this.weights.getLayers()] : null;
+        this.updates = 0;
+        this.samplesSeen = 0;
+        this.checkpointWriter = this.checkpointFile == null ? null : Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "NNCheckpointWriter");
+            t.setDaemon(true);
+            return t;
+        });
+        this.pendingWrite = null;
+        this.checkpoint(); //starting point of the first rollback
+        int rollbacks = 0;
+
         System.out.println("Training...");
         long start = System.nanoTime();
 
-        for (NNEpochsPerformer p: ep) {
-            p.start();
-        }
+        while (true) {
+            this.stopped = false;
+            this.diverged = false;
+            this.epochStart = System.nanoTime();
 
-        int randIndex = (int)(Math.random() * this.data.length);
-        double[] testData = this.data[randIndex];
-        double[] testObj = this.objectives[randIndex];
-        double totalAccuracy = 0.00;
+            NNEpochsPerformer[] ep = new NNEpochsPerformer[nThreads];
+            NNWeights gradient = new NNWeights(this.weights.getInputSize(), this.weights.getLayerSizes());
+            NNBarrier barrier = this.trainingMode == NNTrainingMode.HOGWILD ? null : new NNBarrier(nThreads, () -> this.reduce(ep, gradient));
+            NNBarrier epochBarrier = new NNBarrier(nThreads, () -> this.endOfEpoch(ep, this.epochsRun + 1, size));
+
+            if (this.source != null) {
+                this.prefetcher = new NNPrefetcher(this.source, this.normalizer, this.batchSize, this.shuffleBuffer, nThreads, this.epochsRun, this.epochs, this.shuffleSeed);
+                this.prefetcher.start();
+            }
+
+            for (int i = 0; i < ep.length; i++) {
+                ep[i] = new NNEpochsPerformer(Math.min(first + i * shardSize, last), Math.min(first + (i + 1) * shardSize, last), steps, this.epochsRun, barrier, epochBarrier);
+            }
 
-        try {
             for (NNEpochsPerformer p: ep) {
-                p.join();
-                double[][][] w = p.getWeights();
-                double[][] b = p.getBias();
-
-                double acc = 0.00;
-                this.weights = w;
-                this.bias = b;
-                double[] y = this.getAnswer(testData);
-                for (int i = 0; i < testObj.length; i++) {
-                    acc += this.error(this.error, testObj[i], y[i]);
+                p.start();
+            }
+
+            try {
+                for (NNEpochsPerformer p: ep) {
+                    p.join();
                 }
+            } catch (Exception e) {
+                System.out.println("NNEpochsPerformer join raised an error: " + e.getMessage());
+            }
 
-                acc /= testObj.length;
-                acc *= 10;
-                totalAccuracy += acc;
+            if (this.prefetcher != null) {
+                this.prefetcher.close();
 
-                for (int i = 0; i < w.length; i++) {
-                    for (int j = 0; j < w[i].length; j++) {
-                        for (int k = 0; k < w[i][j].length; k++) {
-                            learnedWeights[i][j][k] += w[i][j][k] * acc;
-                        }
-                    }
+                if (this.prefetcher.getFailure() != null) {
+                    this.closeCheckpointWriter();
+                    this.closeRing();
+                    throw new IllegalStateException("Streaming the training set failed", this.prefetcher.getFailure());
                 }
+            }
 
-                for (int i = 0; i < b.length; i++) {
-                    for (int j = 0; j < b[i].length; j++) {
-                        learnedBias[i][j] += b[i][j] * acc;
-                    }
-                }
+            if (this.clusterFailure != null) {
+                this.closeCheckpointWriter();
+                this.closeRing();
+                throw new IllegalStateException("Lost the connection to the cluster", this.clusterFailure);
+            }
+
+            Throwable failure = barrier != null && barrier.getFailure() != null ? barrier.getFailure() : epochBarrier.getFailure(); //e.g. a training listener that threw
+
+            if (failure != null) {
+                this.closeCheckpointWriter();
+                this.closeRing();
+                throw new IllegalStateException("Training stopped by an error at the end of a step or an epoch", failure);
+            }
+
+            if (!this.diverged) {
+                break;
+            }
+
+            double alpha = this.alpha / 2; //kept across rollbacks, the checkpoint may predate the previous halving
+
+            try {
+                this.restore(this.lastGood); //also when giving up, the network is left with the last good weights instead of the diverged ones
+            } catch (IOException e) {
+                throw new IllegalStateException(e); //the in memory checkpoint always matches
+            }
+
+            if (++rollbacks > MAX_ROLLBACKS) {
+                this.closeCheckpointWriter();
+                this.closeRing();
+                throw new IllegalStateException("Training diverged " + rollbacks + " times, last good checkpoint at epoch " + this.lastGood.epoch);
             }
-        } catch (Exception e) {
-            System.out.println("NNEpochsPerformer join raised an error: " + e.getMessage());
+
+            this.rate *= alpha / this.alpha;
+            this.alpha = alpha;
+            System.out.println("Diverged, rolled back to epoch " + this.epochsRun + ", learning rate halved to " + this.rate);
         }
 
-        for (int i = 0; i < learnedWeights.length; i++) {
-            for (int j = 0; j < learnedWeights[i].length; j++) {
-                for (int k = 0; k < learnedWeights[i][j].length; k++) {
-                    learnedWeights[i][j][k] /= totalAccuracy;
-                }
+        long elapsed = System.nanoTime() - start;
+        this.closeCheckpointWriter();
+        this.closeRing();
+
+        if (this.best != null && this.bestLoss < Double.POSITIVE_INFINITY) {
+            System.out.println("Restoring the weights of the best evaluation (loss " + this.bestLoss + ")");
+            this.weights.copyFrom(this.best);
+        }
+
+        if (this.rescaled) {
+            double[] b = this.weights.getBias();
+            int lastLayer = this.weights.getLayers() - 1;
+
+            for (int i = this.weights.getBiasOffset(lastLayer); i < b.length; i++) {
+                b[i] *= Math.pow(10, this.rescalingLog);
             }
+
+            this.weights.markChanged();
+        }
+
+        super.printElapsedTime(elapsed / 1000000);
+        System.out.println("Throughput: " + (long) (this.samplesSeen / (elapsed / 1e9)) + " samples/sec");
+        System.out.println("Training loss: " + (this.source != null ? this.lastLoss : this.loss(0, size)));
+
+        if (this.source == null && size < this.trainingSet.size()) {
+            System.out.println("Validation loss: " + this.loss(size, this.trainingSet.size()));
         }
+    }
+
+    //joins the ring, then starts every process from the weights of rank 0 and checks that they agree on the number of steps
+    private void connect(int steps) {
+        int parameters = this.weights.getWeights().length + this.weights.getBias().length;
+        this.clusterFailure = null;
+        this.exchange = new double[parameters + 2];
+
+        try {
+            this.ring = NNRing.connect(this.cluster);
+            double[] w = this.weights.getWeights();
+            double[] b = this.weights.getBias();
+            double[] initial = new double[parameters];
+            System.arraycopy(w, 0, initial, 0, w.length);
+            System.arraycopy(b, 0, initial, w.length, b.length);
+            this.ring.broadcast(initial);
+            System.arraycopy(initial, 0, w, 0, w.length);
+            System.arraycopy(initial, w.length, b, 0, b.length);
+            this.weights.markChanged();
+
+            double[] shape = {steps, parameters};
+            this.ring.broadcast(shape);
+            double[] mismatches = {shape[0] != steps || shape[1] != parameters ? 1 : 0}; //every process has to leave if any of them does
+            this.ring.allReduce(mismatches);
 
-        for (int i = 0; i < learnedBias.length; i++) {
-            for (int j = 0; j < learnedBias[i].length; j++) {
-                learnedBias[i][j] /= totalAccuracy;
+            if (mismatches[0] > 0) {
+                throw new IOException("The processes of the cluster disagree on the topology, the training set or the threads");
             }
+        } catch (IOException e) {
+            this.closeRing();
+            throw new IllegalStateException("Joining the cluster failed", e);
         }
+    }
 
-        if (this.rescaled) {
-            int lastIndex = learnedBias.length - 1;
+    private void closeRing() {
+        if (this.ring == null) {
+            return;
+        }
 
-            for (int i = 0; i < learnedBias[lastIndex].length; i++) {
-                learnedBias[lastIndex][i] *= Math.pow(10, this.rescalingLog);
+        try {
+            this.ring.close();
+        } catch (IOException e) {
+            System.out.println("Closing the cluster connections raised an error: " + e);
+        }
+
+        this.ring = null;
+    }
+
+    //waits for the last checkpoint to reach the disk
+    private void closeCheckpointWriter() {
+        if (this.checkpointWriter == null) {
+            return;
+        }
+
+        try {
+            if (this.pendingWrite != null) {
+                this.pendingWrite.get();
             }
+        } catch (InterruptedException | ExecutionException e) {
+            System.out.println("Checkpoint writer raised an error: " + e);
         }
 
-        this.weights = learnedWeights.clone();
-        this.bias = learnedBias.clone();
+        this.checkpointWriter.shutdown();
+        this.checkpointWriter = null;
+    }
+
+    //mean error per output over the rows [first, last) of the training set
+    private double loss(int first, int last) {
+        NNWorkspace ws = new NNWorkspace(this.weights, Math.min(64, last - first), true, NNPrecision.DOUBLE, this.sparse != null);
+        double loss = 0.00;
 
-        super.printElapsedTime((System.nanoTime() - start) / 1000000);
+        for (int k = first; k < last; k += ws.capacity) {
+            int rows = Math.min(ws.capacity, last - k);
+            this.loadBatch(ws, k, rows);
+            this.forward(this.weights, ws, rows);
+            loss += this.batchError(ws, rows);
+        }
+
+        return loss / (last - first);
     }
 
     @Override
     public void test(double[][] testSet, double[][] objectives) {
+        System.out.println("Model accuracy: " + this.accuracy(this.model, testSet, objectives) + "%");
+    }
+
+    //compares a frozen or quantized model with this network on the same rows
+    public void test(double[][] testSet, double[][] objectives, InferenceModel model) {
+        double accuracy = this.accuracy(this.model, testSet, objectives);
+        double other = this.accuracy(model, testSet, objectives);
+        System.out.println("Model accuracy: " + accuracy + "%, " + model.getPrecision() + " model accuracy: " + other + "% (delta " + (other - accuracy) + ")");
+    }
+
+    private double accuracy(InferenceModel model, double[][] testSet, double[][] objectives) {
         double accuracy = 0.00;
 
         for (int i = 0; i < testSet.length; i++) {
             double[] data = testSet[i];
             double[] y = objectives[i];
-            double[] out = this.getAnswer(data);
+
+            if (data.length != this.weights.getInputSize()) {
+                throw new IllegalArgumentException("Prediction data length mismatch at row " + i);
+            }
+
+            double[] out = model.getAnswer(data);
 
             for (int j = 0; j < y.length; j++) {
                 accuracy += Math.exp(-Math.pow(y[j] - out[j], 2)) / y.length;
@@ -228,49 +1039,227 @@ public class NeuralNetwork extends SupervisedNetwork {
 
         accuracy /= testSet.length;
         accuracy *= 100;
-        System.out.println("Model accuracy: " + accuracy + "%");
+        return accuracy;
     }
 
     @Override
     public double[] getAnswer(double[] input) {
-        if (input.length != this.data[0].length) {
+        if (input.length != this.weights.getInputSize()) {
             System.out.println("Prediction data length mismatch");
             return null;
         }
 
-        double[][] values = new double[this.weights.length][];
+        return this.model.getAnswer(input);
+    }
+
+    //cache in front of this network's predictions, entries computed before any later training step are never served
+    public NNPredictionCache cache(int capacity, NNEviction eviction) {
+        return new NNPredictionCache(this.model, capacity, eviction);
+    }
+
+    //prediction from the non zero inputs of a row, see InferenceModel
+    public double[] getAnswer(int[] indices, double[] values) {
+        return this.model.getAnswer(indices, values);
+    }
+
+    //predicts a batch of rows into out without allocating, large batches are split across the common pool
+    public void predict(double[][] inputs, double[][] out) {
+        this.model.predict(inputs, out);
+    }
+
+    //same as predict(double[][], double[][]) over row-major buffers
+    public void predict(double[] inputs, double[] out) {
+        this.model.predict(inputs, out);
+    }
+
+    //immutable copy of the current weights, safe to share between serving threads while this network keeps training
+    public InferenceModel freeze() {
+        return this.freeze(NNPrecision.DOUBLE);
+    }
+
+    //a FLOAT model halves the memory traffic of every prediction at the cost of single precision results, INT8 models are calibrated on the training set like quantize()
+    public InferenceModel freeze(NNPrecision precision) {
+        if (precision == NNPrecision.INT8) {
+            return this.quantize();
+        }
+
+        return new InferenceModel(precision == NNPrecision.DOUBLE ? new NNWeights(this.weights) : this.weights, this.activations.clone(), this.normalizer, precision); //a FLOAT model converts the weights once and keeps none of them
+    }
+
+    //int8 model calibrated on up to CALIBRATION_ROWS rows spread evenly over the training set, it saves memory but predicts slower than a FLOAT one (see NNPrecision)
+    public InferenceModel quantize() {
+        if (this.trainingSet == null) {
+            throw new IllegalStateException("The network has no training set to calibrate on, pass the calibration rows to quantize(double[][])");
+        }
+
+        int rows = Math.min(CALIBRATION_ROWS, this.trainingSet.size());
+        double[][] calibration = new double[rows][this.weights.getInputSize()];
+        double[] y = new double[this.weights.getOutputSize()];
+
+        for (int r = 0; r < rows; r++) {
+            this.trainingSet.read((int) ((long) r * this.trainingSet.size() / rows), calibration[r], 0, y, 0);
+        }
+
+        return this.quantize(calibration);
+    }
 
-        for (int l = 0; l < this.weights.length; l++) { //for each layer
-            values[l] = new double[this.weights[l].length];
-            double[] _input = l == 0 ? input : values[l - 1];
+    //int8 model whose layer inputs are scaled to the largest absolute value they reach on the calibration rows (raw, not normalized)
+    public InferenceModel quantize(double[][] calibration) {
+        int inputSize = this.weights.getInputSize();
+        int layers = this.weights.getLayers();
+        NNWorkspace ws = new NNWorkspace(this.weights, 64, false);
+        double[] max = new double[layers];
 
-            for (int i = 0; i < this.weights[l].length; i++) { //for each neuron of layer l
-                for (int j = 0; j < this.weights[l][i].length; j++) { //for each weight of neuron i of layer l
-                    values[l][i] += this.weights[l][i][j] * _input[j];
+        if (calibration.length == 0) {
+            throw new IllegalArgumentException("Calibration needs at least one row");
+        }
+
+        for (int first = 0; first < calibration.length; first += ws.capacity) {
+            int rows = Math.min(ws.capacity, calibration.length - first);
+
+            for (int r = 0; r < rows; r++) {
+                if (calibration[first + r].length != inputSize) {
+                    throw new IllegalArgumentException("Calibration data length mismatch at row " + (first + r));
                 }
 
-                values[l][i] += this.bias[l][i];
-                values[l][i] = this.activation(this.activations[l], values[l][i]);
+                System.arraycopy(calibration[first + r], 0, ws.input, r * inputSize, inputSize);
             }
+
+            this.normalizer.apply(ws.input, 0, rows);
+            this.forward(this.weights, ws, rows);
+
+            for (int l = 0; l < layers; l++) {
+                double[] input = l == 0 ? ws.input : ws.values[l - 1];
+
+                for (int i = 0; i < rows * this.weights.getFanIn(l); i++) {
+                    max[l] = Math.max(max[l], Math.abs(input[i]));
+                }
+            }
+        }
+
+        float[] inputScale = new float[layers];
+
+        for (int l = 0; l < layers; l++) {
+            inputScale[l] = (float) (max[l] / 127);
         }
 
-        return values[values.length - 1];
+        return new InferenceModel(this.weights, this.activations.clone(), this.normalizer, inputScale);
+    }
+
+    public int getInputSize() {
+        return this.weights.getInputSize();
+    }
+
+    public NNNormalizer getNormalizer() {
+        return this.normalizer;
+    }
+
+    //layout: header (magic, version), topology, activations, error, alpha, epochs, rescaling, normalization type, shift and scale per input, then weights and bias
+    public void save(String filename) throws IOException {
+        int layers = this.weights.getLayers();
+        int headerSize = 4 * Integer.BYTES + 2 * layers * Integer.BYTES + Integer.BYTES + Double.BYTES + 4 * Integer.BYTES + 2 * this.weights.getInputSize() * Double.BYTES;
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MODEL_MAGIC).putInt(MODEL_VERSION).putInt(this.weights.getInputSize()).putInt(layers);
+
+        for (int l = 0; l < layers; l++) {
+            header.putInt(this.weights.getLayerSize(l));
+        }
+
+        for (NNActivation a: this.activations) {
+            header.putInt(a.ordinal());
+        }
+
+        header.putInt(this.error.ordinal()).putDouble(this.alpha).putInt(this.epochs);
+        header.putInt(this.rescaled ? 1 : 0).putInt(this.rescalingLog);
+        header.putInt(this.normalizer.getType().ordinal());
+
+        for (double[] column: new double[][] {this.normalizer.getShift(), this.normalizer.getScale()}) {
+            for (double d: column) {
+                header.putDouble(d);
+            }
+        }
+
+        header.flip();
+
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = headerSize + (long) (this.weights.getWeights().length + this.weights.getBias().length) * Double.BYTES;
+            MappedByteBuffer out = fc.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            out.order(ByteOrder.LITTLE_ENDIAN).put(header);
+            out.asDoubleBuffer().put(this.weights.getWeights()).put(this.weights.getBias());
+            out.force();
+        }
+    }
+
+    //the returned network can predict, be frozen and saved, but not trained
+    public static NeuralNetwork load(String filename) throws IOException {
+        try (FileChannel fc = FileChannel.open(Path.of(filename), StandardOpenOption.READ)) {
+            MappedByteBuffer in = fc.map(FileChannel.MapMode.READ_ONLY, 0, fc.size());
+            in.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (in.remaining() < 4 * Integer.BYTES || in.getInt() != MODEL_MAGIC) {
+                throw new IOException("Not a model file: " + filename);
+            }
+
+            int version = in.getInt();
+
+            if (version != 1 && version != MODEL_VERSION) {
+                throw new IOException("Unsupported model version " + version);
+            }
+
+            int inputSize = in.getInt();
+            int[] layerSize = new int[in.getInt()];
+            NNActivation[] activations = new NNActivation[layerSize.length];
+
+            for (int l = 0; l < layerSize.length; l++) {
+                layerSize[l] = in.getInt();
+            }
+
+            for (int l = 0; l < layerSize.length; l++) {
+                activations[l] = NNActivation.values()[in.getInt()];
+            }
+
+            NNError error = NNError.values()[in.getInt()];
+            double alpha = in.getDouble();
+            int epochs = in.getInt();
+            boolean rescaled = in.getInt() == 1;
+            int rescalingLog = in.getInt();
+            NNNormalizer normalizer;
+
+            if (version == 1) { //a single range for every input, only applied when it was normalized lazily
+                double normMin = in.getDouble();
+                double normMax = in.getDouble();
+                boolean lazyNormalization = in.getInt() == 1;
+                double[] shift = new double[inputSize];
+                double[] scale = new double[inputSize];
+                Arrays.fill(shift, normMin);
+                Arrays.fill(scale, 1 / (normMax - normMin));
+                normalizer = lazyNormalization ? new NNNormalizer(NNNormalization.MIN_MAX, shift, scale) : NNNormalizer.identity(inputSize);
+            } else {
+                NNNormalization type = NNNormalization.values()[in.getInt()];
+                double[] shift = new double[inputSize];
+                double[] scale = new double[inputSize];
+                in.asDoubleBuffer().get(shift).get(scale);
+                in.position(in.position() + 2 * inputSize * Double.BYTES);
+                normalizer = new NNNormalizer(type, shift, scale);
+            }
+
+            NeuralNetwork nn = new NeuralNetwork(null, null, new NNParameters(inputSize, layerSize, epochs, alpha, false, activations, error), normalizer);
+            nn.rescaled = rescaled;
+            nn.rescalingLog = rescalingLog;
+            in.asDoubleBuffer().get(nn.weights.getWeights()).get(nn.weights.getBias());
+            return nn;
+        } catch (BufferUnderflowException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupted model file: " + filename, e);
+        }
     }
 
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Neural Network\n");
-        sb.append("training samples: ").append(this.data.length).append("\n");
-
-        long nweights = 0, nneurons = 0;
-        for (double[][] weight: this.weights) {
-            nneurons += weight.length;
+        sb.append("training samples: ").append(this.trainingSet == null ? 0 : this.trainingSet.size()).append("\n");
 
-            for (double[] doubles: weight) {
-                nweights += doubles.length;
-            }
-        }
+        long nweights = this.weights.getWeights().length, nneurons = this.weights.getBias().length;
 
         sb.append("neurons: ").append(nneurons).append("\n");
         sb.append("synapses: ").append(nweights).append("\n");
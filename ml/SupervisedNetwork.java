@@ -1,15 +1,12 @@
 package ml;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.nio.file.NoSuchFileException;
 
 public abstract class SupervisedNetwork {
     protected double[][] data;
     protected double[][] objectives;
-    protected double[][][] weights;
-    protected double[][] bias;
+    protected NNWeights weights;
     protected double alpha;
     protected int epochs;
     protected boolean rescaled;
@@ -63,10 +60,11 @@ public abstract class SupervisedNetwork {
     protected void zScoreNorm() {
         double mean = this.getMinMaxAvg()[2];
         double sigma = 0.00;
+        double dataLength = this.data.length * this.data[0].length;
 
         for (double[] v : this.data) {
             for (double d: v) {
-                sigma += (Math.pow(d - mean, 2)) / this.data.length;
+                sigma += (Math.pow(d - mean, 2)) / dataLength;
             }
         }
 
@@ -105,12 +103,7 @@ public abstract class SupervisedNetwork {
     }
 
     protected double activation(NNActivation activation, double x) {
-        return switch (activation) {
-            case SIGMOID -> 1.00 / (1.00 + Math.exp(-x));
-            case TANH -> Math.tanh(x);
-            case RELU -> x > 0 ? x : 0;
-            case LINEAR -> x;
-        };
+        return NNKernels.activation(activation, x);
     }
 
     protected double error(NNError f, double y, double out) {
@@ -150,7 +143,7 @@ public abstract class SupervisedNetwork {
     }
 
     protected double errorDerivative(NNError f, double y, double out) {
-        double d = 1.00 / this.weights[this.weights.length - 1].length;
+        double d = 1.00 / this.weights.getOutputSize();
 
         d *= switch(f) {
             case CROSS_ENTROPY -> -(y / out - (1 - y) / (1 - out));
@@ -159,34 +152,38 @@ public abstract class SupervisedNetwork {
         };
 
         if (Double.isNaN(d)) {
-            System.out.println("NaN value found: " + f + ", y=" + y + ", out=" + out);
-            System.exit(0);
+            throw new ArithmeticException("NaN value found: " + f + ", y=" + y + ", out=" + out);
         }
 
         return d;
     }
 
     protected double activationDerivative(NNActivation f, double out, double net) {
-        return switch(f) {
-            case LINEAR -> 1;
-            case SIGMOID -> out * (1 - out);
-            case TANH -> 1 - Math.pow(Math.tanh(net), 2);
-            case RELU -> net > 0 ? 1 : 0;
-        };
+        return NNKernels.activationDerivative(f, out, net);
+    }
+
+    public double[][][] getWeights() {
+        return this.weights.toWeightsArray();
+    }
+
+    public double[][] getBias() {
+        return this.weights.toBiasArray();
     }
 
     public String printWeights() {
         StringBuilder s = new StringBuilder();
+        double[][][] weights = this.getWeights();
+        double[][] bias = this.getBias();
 
-        for (int l = 0; l < this.weights.length; l++) {
-            s.append("Layer ").append(l).append(" (neurons: ").append(this.weights[l].length).append(")\n[\n");
-            for (int n = 0; n < this.weights[l].length; n++) {
+        for (int l = 0; l < weights.length; l++) {
+            s.append("Layer ").append(l).append(" (neurons: ").append(weights[l].length).append(")\n[\n");
+            for (int n = 0; n < weights[l].length; n++) {
                 s.append("[");
-                for (double w: this.weights[l][n]) {
+                for (double w: weights[l][n]) {
                     s.append(w).append(" ");
                 }
 
-                s.append("][b: ").append(this.bias[l][n]).append("]\n");
+                s.append("][b: ").append(bias[l][n]).append("]\n");
             }
 
             s.append("]\n\n");
@@ -197,44 +194,8 @@ public abstract class SupervisedNetwork {
 
     public static double[][][] loadCSV(String filename, int outputCols) {
         try {
-            BufferedReader br = new BufferedReader(new FileReader(filename));
-            ArrayList<double[]>[] list = new ArrayList[] {new ArrayList(), new ArrayList()};
-            double[][][] ret = new double[2][][];
-
-            while(br.ready()) {
-                String row = br.readLine();
-
-                String regex = row.contains(";") ? ";" : ",";
-                String[] data = row.split(regex);
-
-                double[] x = new double[data.length - outputCols];
-                double[] y = new double[outputCols];
-
-                for (int i = 0; i < x.length; i++) {
-                    x[i] = Double.parseDouble(data[i]);
-                }
-
-                for (int i = 0; i < outputCols; i++) {
-                    y[i] = Double.parseDouble(data[x.length + i]);
-                }
-
-                list[0].add(x);
-                list[1].add(y);
-            }
-
-            ret[0] = new double[list[0].size()][list[0].get(0).length];
-            ret[1] = new double[list[1].size()][outputCols];
-
-            for (int i = 0; i < list[0].size(); i++) {
-                ret[0][i] = list[0].get(i);
-            }
-
-            for (int i = 0; i < list[1].size(); i++) {
-                ret[1][i] = list[1].get(i);
-            }
-
-            return ret;
-        } catch (FileNotFoundException fnf) {
+            return new NNCSVDataset(filename, outputCols).toArrays();
+        } catch (NoSuchFileException | FileNotFoundException fnf) {
             System.out.println("Dataset not found");
         } catch (Exception e) {
             System.out.println("There was an error: " + e);
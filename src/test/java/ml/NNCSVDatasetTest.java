@@ -0,0 +1,48 @@
+package ml;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NNCSVDatasetTest {
+    @TempDir
+    Path dir;
+
+    //files over one mapping: the index chunk starting on the second mapping has to look back into the first one
+    @Test
+    void indexesRowsAcrossMappings() throws IOException {
+        Path file = this.dir.resolve("large.csv");
+        long boundary = NNCSVDataset.REGION_SIZE;
+
+        try (RandomAccessFile f = new RandomAccessFile(file.toFile(), "rw")) {
+            f.setLength(boundary + (1 << 20)); //sparse, each gap is indexed as a row of NUL bytes which is counted but has no columns to parse
+            f.seek(0);
+            f.write("1,2\n".getBytes(StandardCharsets.US_ASCII));
+            f.seek(boundary - 1);
+            f.write("\n3,4\n".getBytes(StandardCharsets.US_ASCII)); //a row starting exactly on the boundary
+            f.seek(boundary + 100);
+            f.write("\n5,6\n".getBytes(StandardCharsets.US_ASCII));
+        }
+
+        NNCSVDataset set = new NNCSVDataset(file.toString(), 1);
+        double[] x = new double[1];
+        double[] y = new double[1];
+
+        assertEquals(6, set.size()); //1,2 / NULs / 3,4 / NULs / 5,6 / NULs
+        set.read(0, x, 0, y, 0);
+        assertArrayEquals(new double[] {1, 2}, new double[] {x[0], y[0]});
+        set.read(2, x, 0, y, 0);
+        assertArrayEquals(new double[] {3, 4}, new double[] {x[0], y[0]});
+        set.read(4, x, 0, y, 0);
+        assertArrayEquals(new double[] {5, 6}, new double[] {x[0], y[0]});
+        assertThrows(NumberFormatException.class, () -> set.read(1, x, 0, y, 0));
+    }
+}
@@ -0,0 +1,88 @@
+package ml;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+//the training step reuses the buffers of its workspace, once warmed up it must not allocate at all
+class NNTrainingAllocationTest {
+    private static final int WARMUP_STEPS = 200000; //the Vector API kernels allocate until C2 compiles them
+
+    @Test
+    void stepDoesNotAllocate() throws InterruptedException {
+        com.sun.management.ThreadMXBean mx = threadMXBean();
+
+        for (int batchSize: new int[] {1, 32}) {
+            for (NNOptimizer optimizer: NNOptimizer.values()) {
+                NeuralNetwork.NNEpochsPerformer performer = network(4000, batchSize, optimizer, 1, 1).performer();
+
+                for (int s = 0; s < WARMUP_STEPS / batchSize; s++) { //until the step is compiled
+                    performer.step(s % performer.getSteps());
+                }
+
+                long before = mx.getThreadAllocatedBytes(Thread.currentThread().getId());
+
+                for (int s = 0; s < 10 * performer.getSteps(); s++) {
+                    performer.step(s % performer.getSteps());
+                }
+
+                long allocated = mx.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+                assertEquals(0, allocated, "bytes allocated by " + 10 * performer.getSteps() + " steps, batch size " + batchSize + ", " + optimizer);
+            }
+        }
+    }
+
+    //the workers of synchronous training also meet at the barrier after every step, the only allowance is what the end of each epoch allocates, spread over 20000 steps
+    @Test
+    void synchronousTrainingDoesNotAllocatePerStep() {
+        threadMXBean();
+        List<NNEpochMetrics> epochs = new ArrayList<>();
+        NeuralNetwork nn = network(40000, 1, NNOptimizer.ADAM, 6, 2);
+        nn.addTrainingListener(epochs::add);
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+
+        try {
+            nn.train();
+        } finally {
+            System.setOut(out);
+        }
+
+        for (NNEpochMetrics m: epochs.subList(epochs.size() / 2, epochs.size())) { //the first epochs run while the step is being compiled
+            double bytesPerStep = m.getAllocationRate() / m.getSamplesPerSecond();
+            assertTrue(bytesPerStep < 1, "epoch " + m.getEpoch() + " allocated " + bytesPerStep + " bytes per step");
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assertTrue(mx.isThreadAllocatedMemorySupported() && mx.isThreadAllocatedMemoryEnabled(), "the JVM does not count allocated bytes");
+        return mx;
+    }
+
+    private static NeuralNetwork network(int rows, int batchSize, NNOptimizer optimizer, int epochs, int threads) {
+        Random r = new Random(1);
+        double[][] x = new double[rows][8];
+        double[][] y = new double[rows][2];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < x[i].length; j++) {
+                x[i][j] = r.nextDouble();
+            }
+
+            y[i][0] = x[i][0] * x[i][1];
+            y[i][1] = x[i][2] - x[i][3];
+        }
+
+        NNParameters p = new NNParameters(8, new int[] {16, 16, 2}, epochs, 0.001, false, new NNActivation[] {NNActivation.TANH, NNActivation.RELU, NNActivation.LINEAR}, NNError.MSE).setBatchSize(batchSize).setOptimizer(optimizer).setThreads(threads).setSeed(1L);
+        return new NeuralNetwork(new NNArrayDataset(x, y), p);
+    }
+}
@@ -0,0 +1,77 @@
+package test;
+import ml.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//data-parallel training on several local jvms: "java test.Distributed 4" starts 4 processes on localhost
+//on a real cluster start "java test.Distributed <rank> host:port host:port ..." on every node, with the same list everywhere
+@SuppressWarnings("ALL")
+public class Distributed {
+    private static final int BASE_PORT = 47000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1) {
+            launch(Integer.parseInt(args[0]));
+            return;
+        }
+
+        String[] addresses = new String[args.length - 1];
+        System.arraycopy(args, 1, addresses, 0, addresses.length);
+        NNCluster cluster = new NNCluster(Integer.parseInt(args[0]), addresses);
+
+        double[][][] set = dataset(20000, 42);
+        NNParameters p = new NNParameters(8, new int[] {32, 1}, 20, 0.01, false, new NNActivation[] {NNActivation.TANH, NNActivation.LINEAR}, NNError.MSE).setBatchSize(32).setThreads(1).setOptimizer(NNOptimizer.ADAM).setCluster(cluster);
+        NeuralNetwork nn = new NeuralNetwork(set[0], set[1], p);
+        nn.train();
+
+        double checksum = 0.00;
+
+        for (double[][] layer: nn.getWeights()) {
+            for (double[] neuron: layer) {
+                for (double w: neuron) {
+                    checksum += w;
+                }
+            }
+        }
+
+        System.out.println("Weights checksum: " + checksum); //identical on every rank
+    }
+
+    private static void launch(int processes) throws Exception {
+        String[] addresses = new String[processes];
+
+        for (int i = 0; i < processes; i++) {
+            addresses[i] = "127.0.0.1:" + (BASE_PORT + i);
+        }
+
+        List<Process> ranks = new ArrayList<>();
+
+        for (int i = 0; i < processes; i++) {
+            List<String> command = new ArrayList<>(List.of(System.getProperty("java.home") + "/bin/java", "-cp", System.getProperty("java.class.path"), Distributed.class.getName(), String.valueOf(i)));
+            command.addAll(List.of(addresses));
+            ranks.add(new ProcessBuilder(command).inheritIO().start());
+        }
+
+        for (Process rank: ranks) {
+            rank.waitFor();
+        }
+    }
+
+    //y = sum of sin(x), learnable by a small network
+    private static double[][][] dataset(int rows, long seed) {
+        Random r = new Random(seed);
+        double[][] x = new double[rows][8];
+        double[][] y = new double[rows][1];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < 8; j++) {
+                x[i][j] = r.nextDouble() * 2 - 1;
+                y[i][0] += Math.sin(x[i][j]) / 8;
+            }
+        }
+
+        return new double[][][] {x, y};
+    }
+}
@@ -0,0 +1,306 @@
+package test;
+import ml.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//bulk scoring of a csv file with a saved model: java test.Score <model> <input.csv> <output.csv> [--threads=N] [--batch=N] [--precision=DOUBLE|FLOAT|INT8]
+//one thread parses the input, N threads predict and one thread writes the results in input order, each stage hands batches to the next through bounded queues
+//columns after the model's inputs (e.g. the objectives) are ignored, INT8 models are calibrated on the first rows of the input
+@SuppressWarnings("ALL")
+public class Score {
+    private static final Batch END = new Batch(0, 0);
+    private static final int CALIBRATION_ROWS = 1024;
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    private static final class Batch {
+        final double[] input;
+        final double[] output;
+        long sequence;
+        int rows;
+
+        Batch(int inputs, int outputs) {
+            this.input = new double[inputs];
+            this.output = new double[outputs];
+        }
+    }
+
+    private static volatile Exception failure;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java test.Score <model> <input.csv> <output.csv> [--threads=N] [--batch=N] [--precision=DOUBLE|FLOAT|INT8]");
+            return;
+        }
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 2); //the parser and the writer have their own threads
+        int batchSize = 256;
+        NNPrecision precision = NNPrecision.DOUBLE;
+
+        for (int i = 3; i < args.length; i++) {
+            String value = args[i].substring(args[i].indexOf('=') + 1);
+
+            if (args[i].startsWith("--threads=")) {
+                threads = Integer.parseInt(value);
+            } else if (args[i].startsWith("--batch=")) {
+                batchSize = Integer.parseInt(value);
+            } else if (args[i].startsWith("--precision=")) {
+                precision = NNPrecision.valueOf(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        InferenceModel model = model(args[0], args[1], precision);
+        int inputSize = model.getInputSize();
+        int outputSize = model.getOutputSize();
+
+        try (NNCSVSource source = source(args[1], inputSize); FileChannel out = FileChannel.open(Path.of(args[2]), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            BlockingQueue<Batch> free = new ArrayBlockingQueue<>(4 * threads);
+            BlockingQueue<Batch> parsed = new ArrayBlockingQueue<>(4 * threads + threads); //room for the batches and the END markers
+            BlockingQueue<Batch> scored = new ArrayBlockingQueue<>(4 * threads + threads);
+            long[] busy = new long[3]; //parse, predict (summed over the threads), write
+            long[] rows = new long[1];
+
+            for (int i = 0; i < 4 * threads; i++) {
+                free.add(new Batch(batchSize * inputSize, batchSize * outputSize));
+            }
+
+            int nThreads = threads;
+            int capacity = batchSize;
+            Thread parser = new Thread(() -> parse(source, free, parsed, capacity, nThreads, busy), "ScoreParser");
+            Thread writer = new Thread(() -> write(out, outputSize, scored, free, nThreads, busy, rows), "ScoreWriter");
+            Thread[] predictors = new Thread[threads];
+
+            for (int i = 0; i < threads; i++) {
+                predictors[i] = new Thread(() -> predict(model, parsed, scored, busy), "ScorePredictor-" + i);
+            }
+
+            long start = System.nanoTime();
+            parser.start();
+            writer.start();
+
+            for (Thread t: predictors) {
+                t.start();
+            }
+
+            parser.join();
+
+            for (Thread t: predictors) {
+                t.join();
+            }
+
+            writer.join();
+            double elapsed = System.nanoTime() - start;
+
+            if (failure != null) {
+                throw failure;
+            }
+
+            System.out.println("Scored " + rows[0] + " rows in " + (long) (elapsed / 1e6) + "ms: " + (long) (rows[0] / (elapsed / 1e9)) + " rows/sec");
+            System.out.printf("Stage utilization: parse %.1f%%, predict %.1f%% (%d threads), write %.1f%%%n", 100 * busy[0] / elapsed, 100 * busy[1] / (elapsed * threads), threads, 100 * busy[2] / elapsed);
+        }
+    }
+
+    private static InferenceModel model(String filename, String input, NNPrecision precision) throws IOException {
+        if (precision == NNPrecision.DOUBLE) {
+            return InferenceModel.load(filename);
+        }
+
+        NeuralNetwork nn = NeuralNetwork.load(filename);
+
+        if (precision == NNPrecision.FLOAT) {
+            return nn.freeze(NNPrecision.FLOAT);
+        }
+
+        int inputSize = nn.getInputSize();
+        double[][] calibration = new double[CALIBRATION_ROWS][inputSize];
+        int rows = 0;
+
+        try (NNCSVSource source = source(input, inputSize)) {
+            double[] y = new double[source.getOutputSize()];
+
+            while (rows < CALIBRATION_ROWS && source.next(calibration[rows], 0, y, 0)) {
+                rows++;
+            }
+        }
+
+        double[][] sample = new double[rows][];
+        System.arraycopy(calibration, 0, sample, 0, rows);
+        return nn.quantize(sample);
+    }
+
+    private static NNCSVSource source(String filename, int inputSize) throws IOException {
+        NNCSVSource source = new NNCSVSource(filename, 0);
+
+        if (source.getInputSize() < inputSize) {
+            source.close();
+            throw new IOException("The input has " + source.getInputSize() + " columns, the model expects " + inputSize);
+        }
+
+        if (source.getInputSize() > inputSize) {
+            int extra = source.getInputSize() - inputSize;
+            source.close();
+            return new NNCSVSource(filename, extra);
+        }
+
+        return source;
+    }
+
+    private static void parse(NNCSVSource source, BlockingQueue<Batch> free, BlockingQueue<Batch> parsed, int batchSize, int consumers, long[] busy) {
+        int inputSize = source.getInputSize();
+        double[] y = new double[source.getOutputSize()];
+        long sequence = 0;
+
+        try {
+            boolean more = true;
+
+            while (more && failure == null) {
+                Batch b = free.poll(10, TimeUnit.MILLISECONDS); //batches held by a failed stage never come back
+
+                if (b == null) {
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                b.rows = 0;
+
+                while (b.rows < batchSize && (more = source.next(b.input, b.rows * inputSize, y, 0))) {
+                    b.rows++;
+                }
+
+                b.sequence = sequence++;
+                busy[0] += System.nanoTime() - start;
+                parsed.put(b);
+            }
+        } catch (Exception e) {
+            fail(e);
+        } finally {
+            for (int i = 0; i < consumers; i++) {
+                parsed.add(END);
+            }
+        }
+    }
+
+    //after a failure the batches are still passed on, so that every queue drains and every stage ends
+    private static void predict(InferenceModel model, BlockingQueue<Batch> parsed, BlockingQueue<Batch> scored, long[] busy) {
+        long time = 0;
+
+        try {
+            for (Batch b = parsed.take(); b != END; b = parsed.take()) {
+                long start = System.nanoTime();
+
+                try {
+                    if (failure == null && b.rows == b.input.length / model.getInputSize()) {
+                        model.predict(b.input, b.output);
+                    } else if (failure == null && b.rows > 0) { //the last batch is partial, predict() sizes the batch after the buffers
+                        double[] input = new double[b.rows * model.getInputSize()];
+                        double[] output = new double[b.rows * model.getOutputSize()];
+                        System.arraycopy(b.input, 0, input, 0, input.length);
+                        model.predict(input, output);
+                        System.arraycopy(output, 0, b.output, 0, output.length);
+                    }
+                } catch (RuntimeException e) {
+                    fail(e);
+                }
+
+                time += System.nanoTime() - start;
+                scored.put(b);
+            }
+        } catch (InterruptedException e) {
+            fail(e);
+        } finally {
+            synchronized (busy) {
+                busy[1] += time;
+            }
+
+            scored.add(END);
+        }
+    }
+
+    //batches arrive out of order from the predictors and are held back until their turn
+    private static void write(FileChannel out, int outputSize, BlockingQueue<Batch> scored, BlockingQueue<Batch> free, int producers, long[] busy, long[] rows) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER);
+        StringBuilder sb = new StringBuilder();
+        Map<Long, Batch> pending = new HashMap<>();
+        long next = 0;
+        int ended = 0;
+
+        try {
+            while (ended < producers) {
+                Batch b = scored.take();
+
+                if (b == END) {
+                    ended++;
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                pending.put(b.sequence, b);
+
+                while ((b = pending.remove(next)) != null) {
+                    for (int r = 0; r < b.rows && failure == null; r++) {
+                        sb.setLength(0);
+
+                        for (int i = 0; i < outputSize; i++) {
+                            sb.append(i == 0 ? "" : ",").append(b.output[r * outputSize + i]);
+                        }
+
+                        sb.append('\n');
+
+                        if (buffer.remaining() < sb.length()) {
+                            flush(out, buffer);
+                        }
+
+                        for (int i = 0; i < sb.length(); i++) {
+                            buffer.put((byte) sb.charAt(i));
+                        }
+                    }
+
+                    rows[0] += b.rows;
+                    next++;
+                    free.put(b);
+                }
+
+                busy[2] += System.nanoTime() - start;
+            }
+
+            long start = System.nanoTime();
+            flush(out, buffer);
+            busy[2] += System.nanoTime() - start;
+        } catch (Exception e) {
+            fail(e);
+
+            while (ended < producers) { //keeps the predictors from blocking on a full queue
+                if (scored.poll() == END) {
+                    ended++;
+                }
+            }
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    //the first failure stops the parser, the other stages drain what is left
+    private static void fail(Exception e) {
+        if (failure == null) {
+            failure = e;
+        }
+    }
+}